@@ -0,0 +1,13 @@
+package nl.bertriksikken.datex2;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decodes a (decompressed) MeasuredDataPublication into a sink.
+ */
+public interface IMeasuredDataDecoder {
+
+    void decode(InputStream stream, IMeasuredValueSink sink) throws IOException;
+
+}
@@ -0,0 +1,22 @@
+package nl.bertriksikken.datex2;
+
+import java.time.Instant;
+
+/**
+ * Receives the measured values of a MeasuredDataPublication as flat tuples, one site at a time.
+ * <p>
+ * Implementations are expected to be reusable across sites, so no objects are created per measured value.
+ */
+public interface IMeasuredValueSink {
+
+    void startSite(String siteId, Instant measurementTime);
+
+    void measuredValue(int index, EValueType type, double value, boolean dataError);
+
+    void endSite();
+
+    enum EValueType {
+        FLOW,
+        SPEED
+    }
+}
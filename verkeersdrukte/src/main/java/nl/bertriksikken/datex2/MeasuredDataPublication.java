@@ -8,7 +8,9 @@ import com.fasterxml.jackson.dataformat.xml.XmlMapper;
 import java.io.IOException;
 import java.io.InputStream;
 
-public final class MeasuredDataPublication {
+public final class MeasuredDataPublication implements IMeasuredDataDecoder {
+
+    private static final XmlPathMatcher PATH_MATCHER = new XmlPathMatcher("payloadPublication/siteMeasurements");
 
     private final XmlMapper xmlMapper;
 
@@ -18,19 +20,22 @@ public final class MeasuredDataPublication {
 
     public void parse(InputStream stream, ISiteMeasurementsHandler handler) throws IOException {
         ObjectReader measurementsReader = xmlMapper.readerFor(SiteMeasurements.class);
+        XmlPathMatcher.Tracker tracker = PATH_MATCHER.tracker();
         try (JsonParser parser = xmlMapper.createParser(stream)) {
             for (JsonToken token = parser.nextToken(); token != null; token = parser.nextToken()) {
-                if (token.isStructStart()) {
-                    String xpath = XmlUtil.getPath(parser);
-                    if (xpath.endsWith("/payloadPublication/siteMeasurements")) {
-                        SiteMeasurements siteMeasurements = measurementsReader.readValue(parser);
-                        handler.handle(siteMeasurements);
-                    }
+                if (token.isStructStart() && (tracker.match(parser) >= 0)) {
+                    SiteMeasurements siteMeasurements = measurementsReader.readValue(parser);
+                    handler.handle(siteMeasurements);
                 }
             }
         }
     }
 
+    @Override
+    public void decode(InputStream stream, IMeasuredValueSink sink) throws IOException {
+        parse(stream, record -> record.replay(sink));
+    }
+
     public interface ISiteMeasurementsHandler {
         void handle(SiteMeasurements record);
     }
@@ -0,0 +1,126 @@
+package nl.bertriksikken.datex2;
+
+import com.ctc.wstx.stax.WstxInputFactory;
+import nl.bertriksikken.datex2.IMeasuredValueSink.EValueType;
+import org.codehaus.stax2.XMLInputFactory2;
+import org.codehaus.stax2.XMLStreamReader2;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+
+/**
+ * Allocation-light alternative to {@link MeasuredDataPublication}, decodes a trafficspeed publication with a plain
+ * StAX cursor.
+ * <p>
+ * Values are decoded with the typed stax2 accessors directly from the parser buffers, the value type is taken from the
+ * xsi:type of the basic data, like the Jackson decoder does. Apart from the site id and measurement time per site, the
+ * only object created is the type attribute value per measured value.
+ */
+public final class MeasuredDataStreamDecoder implements IMeasuredDataDecoder {
+
+    private static final XMLInputFactory2 xmlInputFactory;
+
+    static {
+        xmlInputFactory = new WstxInputFactory();
+        xmlInputFactory.configureForSpeed();
+        xmlInputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+    }
+
+    @Override
+    public void decode(InputStream stream, IMeasuredValueSink sink) throws IOException {
+        try {
+            XMLStreamReader2 reader = (XMLStreamReader2) xmlInputFactory.createXMLStreamReader(stream);
+            try {
+                decode(reader, sink);
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException | IllegalArgumentException e) {
+            throw new IOException(e);
+        }
+    }
+
+    // the value type follows from the xsi:type attribute, the parser is not namespace aware so the prefix is ignored
+    private static EValueType basicDataType(XMLStreamReader2 reader) {
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            String name = reader.getAttributeLocalName(i);
+            if (name.equals("type") || name.endsWith(":type")) {
+                return switch (reader.getAttributeValue(i)) {
+                    case MeasuredValue.TrafficFlow.TYPE -> EValueType.FLOW;
+                    case MeasuredValue.TrafficSpeed.TYPE -> EValueType.SPEED;
+                    default -> null;
+                };
+            }
+        }
+        return null;
+    }
+
+    private void decode(XMLStreamReader2 reader, IMeasuredValueSink sink) throws XMLStreamException {
+        String siteId = "";
+        Instant measurementTime = null;
+        boolean started = false;
+        int index = 0;
+        EValueType type = null;
+        double value = Double.NaN;
+        boolean dataError = false;
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                switch (reader.getLocalName()) {
+                    case "siteMeasurements" -> {
+                        siteId = "";
+                        measurementTime = null;
+                        started = false;
+                    }
+                    case "measurementSiteReference" -> siteId = reader.getAttributeValue(null, "id");
+                    case "measurementTimeDefault" -> measurementTime = Instant.parse(reader.getElementText());
+                    case "measuredValue" -> {
+                        // only the outer element carries the index, the inner one is a wrapper
+                        int attribute = reader.getAttributeIndex(null, "index");
+                        if (attribute >= 0) {
+                            index = reader.getAttributeAsInt(attribute);
+                            type = null;
+                            value = Double.NaN;
+                            dataError = false;
+                        }
+                    }
+                    case "basicData" -> {
+                        // same defaults as the Jackson data structure, for a value that has only a data error
+                        type = basicDataType(reader);
+                        value = (type == EValueType.SPEED) ? -1 : 0;
+                    }
+                    case "dataError" -> dataError = reader.getElementAsBoolean();
+                    case "vehicleFlowRate" -> value = reader.getElementAsInt();
+                    case "speed" -> value = reader.getElementAsDouble();
+                    default -> {
+                    }
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                switch (reader.getLocalName()) {
+                    case "basicData" -> {
+                        if (type != null) {
+                            if (!started) {
+                                sink.startSite(siteId, measurementTime);
+                                started = true;
+                            }
+                            sink.measuredValue(index, type, value, dataError);
+                        }
+                    }
+                    case "siteMeasurements" -> {
+                        if (!started) {
+                            sink.startSite(siteId, measurementTime);
+                        }
+                        sink.endSite();
+                    }
+                    default -> {
+                    }
+                }
+            }
+        }
+    }
+
+}
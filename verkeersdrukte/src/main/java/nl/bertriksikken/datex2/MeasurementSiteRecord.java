@@ -5,7 +5,9 @@ import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlElementWrapper;
 import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlProperty;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
 @JsonIgnoreProperties(ignoreUnknown = true)
@@ -35,6 +37,15 @@ public class MeasurementSiteRecord {
         characteristics.add(new MeasurementSpecificCharacteristics(index, newCharacteristic));
     }
 
+    /**
+     * Returns the characteristics by measured value index.
+     */
+    public Map<Integer, MeasurementSpecificCharacteristicsElement> getCharacteristics() {
+        Map<Integer, MeasurementSpecificCharacteristicsElement> map = new LinkedHashMap<>();
+        characteristics.forEach(c -> map.put(c.index(), c.element()));
+        return map;
+    }
+
     public MeasurementSpecificCharacteristicsElement findCharacteristic(int index) {
         return characteristics.stream().filter(e -> e.index() == index)
                 .map(MeasurementSpecificCharacteristics::element).findFirst().orElse(null);
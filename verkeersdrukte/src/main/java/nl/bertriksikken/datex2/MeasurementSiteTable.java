@@ -16,6 +16,7 @@ import java.util.Set;
 public final class MeasurementSiteTable {
 
     private static final XmlFactory xmlFactory;
+    private static final XmlPathMatcher PATH_MATCHER = new XmlPathMatcher("measurementSiteTable/measurementSiteRecord");
 
     static {
         XMLInputFactory xmlInputFactory = XMLInputFactory.newFactory();
@@ -35,15 +36,13 @@ public final class MeasurementSiteTable {
     }
 
     public void parse(InputStream stream, Set<String> siteIds) throws IOException {
+        XmlPathMatcher.Tracker tracker = PATH_MATCHER.tracker();
         try (JsonParser parser = xmlFactory.createParser(stream)) {
             for (JsonToken token = parser.nextToken(); token != null; token = parser.nextToken()) {
-                if (token.isStructStart()) {
-                    String xpath = XmlUtil.getPath(parser);
-                    if (xpath.endsWith("/measurementSiteTable/measurementSiteRecord")) {
-                        MeasurementSiteRecord record = msrReader.readValue(parser);
-                        if (siteIds.isEmpty() || siteIds.contains(record.id())) {
-                            records.put(record.id(), record);
-                        }
+                if (token.isStructStart() && (tracker.match(parser) >= 0)) {
+                    MeasurementSiteRecord record = msrReader.readValue(parser);
+                    if (siteIds.isEmpty() || siteIds.contains(record.id())) {
+                        records.put(record.id(), record);
                     }
                 }
             }
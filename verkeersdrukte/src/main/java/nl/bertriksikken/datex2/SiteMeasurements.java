@@ -40,6 +40,24 @@ public final class SiteMeasurements {
         return Instant.parse(measurementTimeDefault);
     }
 
+    /**
+     * Replays this record as flat tuples into the sink, same as {@link MeasuredDataStreamDecoder} would.
+     */
+    public void replay(IMeasuredValueSink sink) {
+        sink.startSite(reference.id, getMeasurementTime());
+        for (MeasuredValue value : measuredValueList) {
+            MeasuredValue.BasicData basicData = value.measuredValue.basicData();
+            if (basicData instanceof MeasuredValue.TrafficFlow flow) {
+                sink.measuredValue(value.index, IMeasuredValueSink.EValueType.FLOW,
+                        flow.vehicleFlow.vehicleFlowRate, flow.vehicleFlow.dataError);
+            } else if (basicData instanceof MeasuredValue.TrafficSpeed speed) {
+                sink.measuredValue(value.index, IMeasuredValueSink.EValueType.SPEED,
+                        speed.averageVehicleSpeed.speed, speed.averageVehicleSpeed.dataError);
+            }
+        }
+        sink.endSite();
+    }
+
     public static final class Reference {
         @JacksonXmlProperty(localName = "id", isAttribute = true)
         public String id = "";
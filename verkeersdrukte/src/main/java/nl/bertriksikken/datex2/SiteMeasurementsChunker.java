@@ -0,0 +1,190 @@
+package nl.bertriksikken.datex2;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Slices a (decompressed) MeasuredDataPublication into chunks of siteMeasurements records, so they can be decoded
+ * independently.
+ * <p>
+ * The records are found by scanning the raw bytes for start and end tags with the local name siteMeasurements
+ * (with or without a namespace prefix), without parsing the XML. Each chunk is wrapped in a minimal document that
+ * carries the namespace declarations found before the first record, so it can be decoded by any
+ * {@link IMeasuredDataDecoder}.
+ */
+public final class SiteMeasurementsChunker {
+
+    private static final byte[] LOCAL_NAME = "siteMeasurements".getBytes(StandardCharsets.US_ASCII);
+    private static final Pattern NAMESPACE_DECLARATION =
+            Pattern.compile("\\sxmlns(:[^\\s=/>]+)?\\s*=\\s*(\"[^\"]*\"|'[^']*')");
+    private static final byte[] CHUNK_SUFFIX = "</payloadPublication></d2LogicalModel>".getBytes(StandardCharsets.US_ASCII);
+    private static final int BLOCK_SIZE = 65536;
+
+    private final int recordsPerChunk;
+
+    public SiteMeasurementsChunker(int recordsPerChunk) {
+        this.recordsPerChunk = recordsPerChunk;
+    }
+
+    public void split(InputStream stream, IChunkHandler handler) throws IOException {
+        byte[] buffer = new byte[2 * BLOCK_SIZE];
+        int length = 0;
+        int position = 0;
+        int recordStart = -1;
+        int records = 0;
+        // everything before the first record, to pick up the namespace declarations from
+        ByteArrayOutputStream prolog = new ByteArrayOutputStream();
+        byte[] chunkPrefix = null;
+        ByteArrayOutputStream chunk = null;
+        while (true) {
+            // find as many complete records in the buffer as possible
+            while (true) {
+                int index = findTag(buffer, position, length, recordStart >= 0);
+                if (index < 0) {
+                    position = -index - 1;
+                    break;
+                }
+                if (recordStart < 0) {
+                    recordStart = index;
+                    position = index + 1;
+                    if (chunkPrefix == null) {
+                        prolog.write(buffer, 0, recordStart);
+                        chunkPrefix = createChunkPrefix(prolog);
+                    }
+                } else {
+                    int recordEnd = indexOf(buffer, index, length, (byte) '>') + 1;
+                    if (chunk == null) {
+                        chunk = newChunk(chunkPrefix);
+                    }
+                    chunk.write(buffer, recordStart, recordEnd - recordStart);
+                    recordStart = -1;
+                    position = recordEnd;
+                    if (++records == recordsPerChunk) {
+                        handler.handle(closeChunk(chunk));
+                        chunk = null;
+                        records = 0;
+                    }
+                }
+            }
+
+            // discard what is no longer needed, read some more
+            int keep = (recordStart >= 0) ? recordStart : position;
+            if (chunkPrefix == null) {
+                prolog.write(buffer, 0, keep);
+            }
+            System.arraycopy(buffer, keep, buffer, 0, length - keep);
+            length -= keep;
+            position -= keep;
+            if (recordStart >= 0) {
+                recordStart -= keep;
+            }
+            if (buffer.length - length < BLOCK_SIZE) {
+                buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+            }
+            int read = stream.read(buffer, length, buffer.length - length);
+            if (read < 0) {
+                break;
+            }
+            length += read;
+        }
+        if (recordStart >= 0) {
+            throw new IOException("Incomplete siteMeasurements record at end of input");
+        }
+        if (records > 0) {
+            handler.handle(closeChunk(chunk));
+        }
+    }
+
+    /**
+     * Returns the index of the next start (or end) tag with the local name siteMeasurements.
+     * <p>
+     * If there is none, returns {@code -1 - resume}, where resume is the position to continue scanning from once more
+     * data is available: the start of a tag that is cut off by the end of the buffer, or the end of the buffer.
+     */
+    private static int findTag(byte[] buffer, int from, int length, boolean endTag) {
+        for (int i = from; i < length; i++) {
+            if (buffer[i] != '<') {
+                continue;
+            }
+            int nameStart = i + 1;
+            if (endTag) {
+                if (nameStart == length) {
+                    return -1 - i;
+                }
+                if (buffer[nameStart] != '/') {
+                    continue;
+                }
+                nameStart++;
+            }
+            int localStart = nameStart;
+            int nameEnd = nameStart;
+            while (nameEnd < length && !isNameEnd(buffer[nameEnd])) {
+                if (buffer[nameEnd] == ':') {
+                    localStart = nameEnd + 1;
+                }
+                nameEnd++;
+            }
+            if (nameEnd == length) {
+                return -1 - i;
+            }
+            if (Arrays.equals(buffer, localStart, nameEnd, LOCAL_NAME, 0, LOCAL_NAME.length)) {
+                if (!endTag) {
+                    return i;
+                }
+                // an end tag is only complete with its closing bracket
+                return (indexOf(buffer, nameEnd, length, (byte) '>') < 0) ? -1 - i : i;
+            }
+        }
+        return -1 - length;
+    }
+
+    private static byte[] createChunkPrefix(ByteArrayOutputStream prolog) {
+        // later (inner) declarations of the same prefix win
+        Map<String, String> declarations = new LinkedHashMap<>();
+        Matcher matcher = NAMESPACE_DECLARATION.matcher(prolog.toString(StandardCharsets.UTF_8));
+        while (matcher.find()) {
+            String prefix = (matcher.group(1) != null) ? matcher.group(1) : "";
+            declarations.put(prefix, matcher.group(2));
+        }
+        StringBuilder sb = new StringBuilder("<d2LogicalModel");
+        declarations.forEach((prefix, uri) -> sb.append(" xmlns").append(prefix).append('=').append(uri));
+        sb.append("><payloadPublication>");
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static ByteArrayOutputStream newChunk(byte[] prefix) {
+        ByteArrayOutputStream chunk = new ByteArrayOutputStream(BLOCK_SIZE);
+        chunk.writeBytes(prefix);
+        return chunk;
+    }
+
+    private static byte[] closeChunk(ByteArrayOutputStream chunk) {
+        chunk.writeBytes(CHUNK_SUFFIX);
+        return chunk.toByteArray();
+    }
+
+    private static boolean isNameEnd(byte b) {
+        return (b == '>') || (b == '/') || (b == ' ') || (b == '\t') || (b == '\r') || (b == '\n');
+    }
+
+    private static int indexOf(byte[] buffer, int from, int length, byte b) {
+        for (int i = from; i < length; i++) {
+            if (buffer[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public interface IChunkHandler {
+        void handle(byte[] chunk) throws IOException;
+    }
+
+}
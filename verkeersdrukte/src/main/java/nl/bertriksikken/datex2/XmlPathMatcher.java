@@ -0,0 +1,126 @@
+package nl.bertriksikken.datex2;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonStreamContext;
+
+import java.util.Arrays;
+
+/**
+ * Matches the element path of a Jackson XML parser against a fixed set of target paths.
+ * <p>
+ * The target paths are compiled into a small automaton, its state is a bit per (path, segment) pair telling which
+ * target paths the element path currently ends with a prefix of. A {@link Tracker} keeps the state of each open element
+ * on a stack, so each element only costs one step from the state of its parent, whatever its depth, and no path string
+ * is built. Element names are compared with equals(), which is a reference comparison for names interned by the parser.
+ * <p>
+ * The matcher itself is immutable and can be shared, each parse needs its own tracker.
+ */
+public final class XmlPathMatcher {
+
+    private static final int MAX_SEGMENTS = Long.SIZE;
+
+    private final String[] segments;
+    // bits of the first segment of each path, those can start a match anywhere
+    private final long startBits;
+    // bit of the last segment of each path
+    private final long[] finalBits;
+
+    /**
+     * Creates a matcher for target paths, each a '/' separated list of element names the element path should end with.
+     */
+    public XmlPathMatcher(String... paths) {
+        String[][] split = Arrays.stream(paths)
+                .map(path -> Arrays.stream(path.split("/")).filter(s -> !s.isEmpty()).toArray(String[]::new))
+                .toArray(String[][]::new);
+        int count = Arrays.stream(split).mapToInt(path -> path.length).sum();
+        if (count > MAX_SEGMENTS) {
+            throw new IllegalArgumentException("Too many path segments: " + count);
+        }
+        segments = new String[count];
+        finalBits = new long[split.length];
+        long start = 0;
+        int bit = 0;
+        for (int i = 0; i < split.length; i++) {
+            start |= 1L << bit;
+            for (String segment : split[i]) {
+                segments[bit++] = segment;
+            }
+            finalBits[i] = 1L << (bit - 1);
+        }
+        startBits = start;
+    }
+
+    /**
+     * Returns a new tracker, for one parse.
+     */
+    public Tracker tracker() {
+        return new Tracker();
+    }
+
+    // advances the state of the parent element with the name of a child element
+    private long step(long state, String name) {
+        // a segment matches if it starts a path, or if the segment before it matched in the parent
+        long candidates = startBits | (state << 1);
+        long next = 0;
+        for (long bits = candidates; bits != 0; bits &= bits - 1) {
+            int bit = Long.numberOfTrailingZeros(bits);
+            if ((bit < segments.length) && segments[bit].equals(name)) {
+                next |= 1L << bit;
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Tracks the element path of one parser, by keeping the matcher state of each open element.
+     */
+    public final class Tracker {
+
+        private JsonStreamContext[] contexts = new JsonStreamContext[16];
+        private long[] states = new long[16];
+        private int size;
+
+        private Tracker() {
+        }
+
+        /**
+         * Returns the index of the first target path matching the current element path, or -1 if none matches.
+         * <p>
+         * To be called on each struct start token that the caller sees, the contents of an element that is read as a
+         * whole (for example by an ObjectReader) can be skipped.
+         */
+        // parser contexts are identified by reference, the parser reuses them for sibling elements
+        @SuppressWarnings("ReferenceEquality")
+        public int match(JsonParser parser) {
+            JsonStreamContext context = parser.getParsingContext();
+            JsonStreamContext parent = context.getParent();
+            // drop the elements that were closed since the previous call
+            while (size > 0 && contexts[size - 1] != parent) {
+                size--;
+            }
+            long state = (size > 0) ? states[size - 1] : 0;
+            // the name of a struct is the current name of its parent
+            String name = (parent != null) ? parent.getCurrentName() : null;
+            if (name != null) {
+                state = step(state, name);
+            }
+            push(context, state);
+            for (int i = 0; i < finalBits.length; i++) {
+                if ((state & finalBits[i]) != 0) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private void push(JsonStreamContext context, long state) {
+            if (size == contexts.length) {
+                contexts = Arrays.copyOf(contexts, 2 * size);
+                states = Arrays.copyOf(states, 2 * size);
+            }
+            contexts[size] = context;
+            states[size] = state;
+            size++;
+        }
+    }
+}
@@ -5,7 +5,7 @@ import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.dataformat.xml.XmlFactory;
 import com.fasterxml.jackson.dataformat.xml.XmlMapper;
-import nl.bertriksikken.datex2.XmlUtil;
+import nl.bertriksikken.datex2.XmlPathMatcher;
 
 import javax.xml.stream.XMLInputFactory;
 import java.io.IOException;
@@ -24,6 +24,10 @@ import java.util.Map;
 public final class VmsPayload {
 
     private static final XmlFactory xmlFactory;
+    private static final int PATH_CONTROLLER = 0;
+    private static final int PATH_STATUS = 1;
+    private static final XmlPathMatcher PATH_MATCHER =
+            new XmlPathMatcher("vms:vmsController", "vms:vmsControllerStatus");
 
     static {
         XMLInputFactory xmlInputFactory = XMLInputFactory.newFactory();
@@ -42,17 +46,21 @@ public final class VmsPayload {
     public void parse(InputStream stream) throws IOException {
         ObjectReader controllerReader = xmlMapper.readerFor(VmsController.class);
         ObjectReader statusReader = xmlMapper.readerFor(VmsControllerStatus.class);
+        XmlPathMatcher.Tracker tracker = PATH_MATCHER.tracker();
         try (JsonParser parser = xmlFactory.createParser(stream)) {
             for (JsonToken token = parser.nextToken(); token != null; token = parser.nextToken()) {
                 if (token.isStructStart()) {
-                    String xpath = XmlUtil.getPath(parser);
-                    if (xpath.endsWith("vms:vmsController")) {
-                        VmsController controller = controllerReader.readValue(parser);
-                        controllers.put(controller.getId(), controller);
-                    }
-                    if (xpath.endsWith("vms:vmsControllerStatus")) {
-                        VmsControllerStatus status = statusReader.readValue(parser);
-                        statuses.put(status.getId(), status);
+                    switch (tracker.match(parser)) {
+                        case PATH_CONTROLLER -> {
+                            VmsController controller = controllerReader.readValue(parser);
+                            controllers.put(controller.getId(), controller);
+                        }
+                        case PATH_STATUS -> {
+                            VmsControllerStatus status = statusReader.readValue(parser);
+                            statuses.put(status.getId(), status);
+                        }
+                        default -> {
+                        }
                     }
                 }
             }
@@ -63,6 +71,10 @@ public final class VmsPayload {
         return List.copyOf(statuses.values());
     }
 
+    public List<VmsController> getControllers() {
+        return List.copyOf(controllers.values());
+    }
+
     public VmsController findController(String id) {
         return controllers.get(id);
     }
@@ -0,0 +1,74 @@
+package nl.bertriksikken.mvt;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Minimal protocol buffers writer, just enough for encoding vector tiles.
+ */
+final class ProtobufWriter {
+
+    static final int VARINT = 0;
+    static final int FIXED64 = 1;
+    static final int LENGTH_DELIMITED = 2;
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    void writeVarint(long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    void writeTag(int field, int wireType) {
+        writeVarint(((long) field << 3) | wireType);
+    }
+
+    void writeVarintField(int field, long value) {
+        writeTag(field, VARINT);
+        writeVarint(value);
+    }
+
+    void writeDoubleField(int field, double value) {
+        writeTag(field, FIXED64);
+        long bits = Double.doubleToLongBits(value);
+        for (int i = 0; i < 8; i++) {
+            out.write((int) (bits >>> (8 * i)));
+        }
+    }
+
+    void writeBytesField(int field, byte[] data) {
+        writeTag(field, LENGTH_DELIMITED);
+        writeVarint(data.length);
+        out.writeBytes(data);
+    }
+
+    /**
+     * Writes already encoded fields.
+     */
+    void writeRaw(byte[] encodedFields) {
+        out.writeBytes(encodedFields);
+    }
+
+    void writeStringField(int field, String value) {
+        writeBytesField(field, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    void writePackedField(int field, int[] values, int count) {
+        ProtobufWriter packed = new ProtobufWriter();
+        for (int i = 0; i < count; i++) {
+            packed.writeVarint(Integer.toUnsignedLong(values[i]));
+        }
+        writeBytesField(field, packed.toByteArray());
+    }
+
+    static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    byte[] toByteArray() {
+        return out.toByteArray();
+    }
+}
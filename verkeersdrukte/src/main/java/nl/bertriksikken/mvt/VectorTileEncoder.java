@@ -0,0 +1,170 @@
+package nl.bertriksikken.mvt;
+
+import nl.bertriksikken.spatial.BoundingBox;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encodes point features into a Mapbox Vector Tile (version 2.1), for one tile in the web mercator tiling scheme.
+ * <p>
+ * See https://github.com/mapbox/vector-tile-spec/tree/master/2.1
+ */
+public final class VectorTileEncoder {
+
+    public static final String MEDIA_TYPE = "application/vnd.mapbox-vector-tile";
+
+    private static final int EXTENT = 4096;
+    private static final int BUFFER = 64;
+    private static final int MAX_ZOOM = 24;
+
+    private static final int TILE_LAYERS = 3;
+    private static final int LAYER_NAME = 1;
+    private static final int LAYER_FEATURES = 2;
+    private static final int LAYER_KEYS = 3;
+    private static final int LAYER_VALUES = 4;
+    private static final int LAYER_EXTENT = 5;
+    private static final int LAYER_VERSION = 15;
+    private static final int FEATURE_ID = 1;
+    private static final int FEATURE_TAGS = 2;
+    private static final int FEATURE_TYPE = 3;
+    private static final int FEATURE_GEOMETRY = 4;
+    private static final int VALUE_STRING = 1;
+    private static final int VALUE_DOUBLE = 3;
+    private static final int VALUE_INT = 4;
+    private static final int VALUE_BOOL = 7;
+    private static final int GEOM_TYPE_POINT = 1;
+    private static final int CMD_MOVE_TO_ONE = (1 << 3) | 1;
+
+    private final int z;
+    private final int x;
+    private final int y;
+    private final List<Layer> layers = new ArrayList<>();
+
+    public VectorTileEncoder(int z, int x, int y) {
+        if (z < 0 || z > MAX_ZOOM || x < 0 || y < 0 || x >= (1 << z) || y >= (1 << z)) {
+            throw new IllegalArgumentException("Invalid tile " + z + "/" + x + "/" + y);
+        }
+        this.z = z;
+        this.x = x;
+        this.y = y;
+    }
+
+    /**
+     * Returns the bounding box of the tile, including the buffer around it.
+     */
+    public BoundingBox getBoundingBox() {
+        double margin = (double) BUFFER / EXTENT;
+        double minLon = Math.max(-180.0, tileToLon(x - margin));
+        double maxLon = Math.min(180.0, tileToLon(x + 1 + margin));
+        double minLat = tileToLat(y + 1 + margin);
+        double maxLat = tileToLat(y - margin);
+        return new BoundingBox(minLon, minLat, maxLon, maxLat);
+    }
+
+    private double tileToLon(double tx) {
+        return tx / (1 << z) * 360.0 - 180.0;
+    }
+
+    private double tileToLat(double ty) {
+        double n = Math.PI * (1 - 2 * ty / (1 << z));
+        return Math.toDegrees(Math.atan(Math.sinh(n)));
+    }
+
+    public Layer addLayer(String name) {
+        Layer layer = new Layer(name);
+        layers.add(layer);
+        return layer;
+    }
+
+    public byte[] encode() {
+        ProtobufWriter tile = new ProtobufWriter();
+        for (Layer layer : layers) {
+            tile.writeBytesField(TILE_LAYERS, layer.encode());
+        }
+        return tile.toByteArray();
+    }
+
+    public final class Layer {
+        private final String name;
+        private final Map<String, Integer> keys = new LinkedHashMap<>();
+        private final Map<Object, Integer> values = new LinkedHashMap<>();
+        private final ProtobufWriter features = new ProtobufWriter();
+        private final int[] tags = new int[64];
+
+        private Layer(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Adds a point, attributes with a null value are skipped.
+         */
+        public void addPoint(long id, double lat, double lon, Map<String, Object> attributes) {
+            double scale = (double) (1 << z) * EXTENT;
+            double px = (lon + 180.0) / 360.0 * scale - (double) x * EXTENT;
+            double sinLat = Math.sin(Math.toRadians(lat));
+            double py = (0.5 - Math.log((1 + sinLat) / (1 - sinLat)) / (4 * Math.PI)) * scale - (double) y * EXTENT;
+            int tx = (int) Math.round(px);
+            int ty = (int) Math.round(py);
+            if (tx < -BUFFER || tx > EXTENT + BUFFER || ty < -BUFFER || ty > EXTENT + BUFFER) {
+                return;
+            }
+
+            int count = 0;
+            for (Map.Entry<String, Object> entry : attributes.entrySet()) {
+                Object value = entry.getValue();
+                if (value != null && count + 2 <= tags.length) {
+                    tags[count++] = keys.computeIfAbsent(entry.getKey(), k -> keys.size());
+                    tags[count++] = values.computeIfAbsent(normalize(value), v -> values.size());
+                }
+            }
+
+            ProtobufWriter feature = new ProtobufWriter();
+            feature.writeVarintField(FEATURE_ID, id);
+            feature.writePackedField(FEATURE_TAGS, tags, count);
+            feature.writeVarintField(FEATURE_TYPE, GEOM_TYPE_POINT);
+            int[] geometry = {CMD_MOVE_TO_ONE, ProtobufWriter.zigzag(tx), ProtobufWriter.zigzag(ty)};
+            feature.writePackedField(FEATURE_GEOMETRY, geometry, geometry.length);
+            features.writeBytesField(LAYER_FEATURES, feature.toByteArray());
+        }
+
+        // integral numbers share a value entry, whatever their boxed type
+        private Object normalize(Object value) {
+            if (value instanceof Integer || value instanceof Long || value instanceof Short) {
+                return ((Number) value).longValue();
+            }
+            if (value instanceof Number number) {
+                return number.doubleValue();
+            }
+            if (value instanceof Boolean) {
+                return value;
+            }
+            return value.toString();
+        }
+
+        private byte[] encode() {
+            ProtobufWriter layer = new ProtobufWriter();
+            layer.writeVarintField(LAYER_VERSION, 2);
+            layer.writeStringField(LAYER_NAME, name);
+            byte[] featureBytes = features.toByteArray();
+            layer.writeRaw(featureBytes);
+            for (String key : keys.keySet()) {
+                layer.writeStringField(LAYER_KEYS, key);
+            }
+            for (Object value : values.keySet()) {
+                ProtobufWriter v = new ProtobufWriter();
+                switch (value) {
+                    case Long l -> v.writeVarintField(VALUE_INT, l);
+                    case Double d -> v.writeDoubleField(VALUE_DOUBLE, d);
+                    case Boolean b -> v.writeVarintField(VALUE_BOOL, b ? 1 : 0);
+                    default -> v.writeStringField(VALUE_STRING, value.toString());
+                }
+                layer.writeBytesField(LAYER_VALUES, v.toByteArray());
+            }
+            layer.writeVarintField(LAYER_EXTENT, EXTENT);
+            return layer.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package nl.bertriksikken.spatial;
+
+/**
+ * A bounding box in WGS84 coordinates.
+ */
+public record BoundingBox(double minLon, double minLat, double maxLon, double maxLat) {
+
+    public BoundingBox {
+        if (!(minLon <= maxLon) || !(minLat <= maxLat)) {
+            throw new IllegalArgumentException("Invalid bounding box");
+        }
+    }
+
+    /**
+     * Parses a bounding box in the "minLon,minLat,maxLon,maxLat" format (as used by OGC APIs).
+     */
+    public static BoundingBox parse(String text) {
+        String[] parts = text.split(",", -1);
+        if (parts.length != 4) {
+            throw new IllegalArgumentException("Expected minLon,minLat,maxLon,maxLat");
+        }
+        return new BoundingBox(Double.parseDouble(parts[0]), Double.parseDouble(parts[1]),
+                Double.parseDouble(parts[2]), Double.parseDouble(parts[3]));
+    }
+
+    public boolean contains(double lat, double lon) {
+        return (lat >= minLat) && (lat <= maxLat) && (lon >= minLon) && (lon <= maxLon);
+    }
+}
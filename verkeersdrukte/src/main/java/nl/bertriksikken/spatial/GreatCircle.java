@@ -0,0 +1,24 @@
+package nl.bertriksikken.spatial;
+
+/**
+ * Great-circle distance on a spherical earth, with the haversine formula.
+ */
+public final class GreatCircle {
+
+    static final double EARTH_RADIUS = 6_371_008.8; // meters, mean radius
+
+    private GreatCircle() {
+        // utility class
+    }
+
+    /**
+     * Returns the distance in meters between two WGS84 coordinates.
+     */
+    public static double distance(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS * Math.asin(Math.min(1.0, Math.sqrt(a)));
+    }
+}
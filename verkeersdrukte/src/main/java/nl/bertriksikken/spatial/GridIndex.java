@@ -0,0 +1,177 @@
+package nl.bertriksikken.spatial;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Immutable spatial index of points on a uniform latitude/longitude grid.
+ * <p>
+ * Items are sorted by grid cell into flat arrays, with the start of each cell in a separate array, so a bounding box
+ * query only visits the cells overlapping the box.
+ */
+public final class GridIndex<T> {
+
+    private final double cellSize;
+    private final double minLat;
+    private final double minLon;
+    private final double maxAbsLat;
+    private final int rows;
+    private final int cols;
+    private final int[] cellStart;
+    private final double[] lats;
+    private final double[] lons;
+    private final Object[] items;
+
+    public GridIndex(List<T> points, ToDoubleFunction<T> latitude, ToDoubleFunction<T> longitude, double cellSize) {
+        this.cellSize = cellSize;
+        int n = points.size();
+        double[] pointLats = new double[n];
+        double[] pointLons = new double[n];
+        double lat0 = Double.POSITIVE_INFINITY;
+        double lon0 = Double.POSITIVE_INFINITY;
+        double lat1 = Double.NEGATIVE_INFINITY;
+        double lon1 = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            pointLats[i] = latitude.applyAsDouble(points.get(i));
+            pointLons[i] = longitude.applyAsDouble(points.get(i));
+            lat0 = Math.min(lat0, pointLats[i]);
+            lon0 = Math.min(lon0, pointLons[i]);
+            lat1 = Math.max(lat1, pointLats[i]);
+            lon1 = Math.max(lon1, pointLons[i]);
+        }
+        minLat = (n > 0) ? lat0 : 0.0;
+        minLon = (n > 0) ? lon0 : 0.0;
+        maxAbsLat = (n > 0) ? Math.max(Math.abs(lat0), Math.abs(lat1)) : 0.0;
+        rows = (n > 0) ? (int) ((lat1 - lat0) / cellSize) + 1 : 1;
+        cols = (n > 0) ? (int) ((lon1 - lon0) / cellSize) + 1 : 1;
+
+        // counting sort by cell
+        int[] cells = new int[n];
+        cellStart = new int[rows * cols + 1];
+        for (int i = 0; i < n; i++) {
+            cells[i] = row(pointLats[i]) * cols + col(pointLons[i]);
+            cellStart[cells[i] + 1]++;
+        }
+        for (int cell = 0; cell < rows * cols; cell++) {
+            cellStart[cell + 1] += cellStart[cell];
+        }
+        int[] next = cellStart.clone();
+        lats = new double[n];
+        lons = new double[n];
+        items = new Object[n];
+        for (int i = 0; i < n; i++) {
+            int index = next[cells[i]]++;
+            lats[index] = pointLats[i];
+            lons[index] = pointLons[i];
+            items[index] = points.get(i);
+        }
+    }
+
+    private int row(double lat) {
+        return Math.clamp((long) Math.floor((lat - minLat) / cellSize), 0, rows - 1);
+    }
+
+    private int col(double lon) {
+        return Math.clamp((long) Math.floor((lon - minLon) / cellSize), 0, cols - 1);
+    }
+
+    /**
+     * Returns the items inside the bounding box (inclusive), in grid order.
+     */
+    public List<T> query(BoundingBox bbox) {
+        List<T> result = new ArrayList<>();
+        forEachInside(bbox, result::add);
+        return result;
+    }
+
+    /**
+     * Visits the items inside the bounding box (inclusive), in grid order.
+     */
+    @SuppressWarnings("unchecked")
+    public void forEachInside(BoundingBox bbox, IVisitor<T> visitor) {
+        if (items.length == 0) {
+            return;
+        }
+        int row0 = row(bbox.minLat());
+        int row1 = row(bbox.maxLat());
+        int col0 = col(bbox.minLon());
+        int col1 = col(bbox.maxLon());
+        for (int row = row0; row <= row1; row++) {
+            // the cells of a row in the column range are contiguous
+            int start = cellStart[row * cols + col0];
+            int end = cellStart[row * cols + col1 + 1];
+            for (int i = start; i < end; i++) {
+                if (bbox.contains(lats[i], lons[i])) {
+                    visitor.visit((T) items[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the k items nearest to a coordinate by great-circle distance, nearest first.
+     * <p>
+     * Searches rings of cells around the cell of the coordinate, until no unvisited cell can contain a nearer item.
+     */
+    @SuppressWarnings("unchecked")
+    public List<Neighbour<T>> nearest(double lat, double lon, int k) {
+        if (items.length == 0 || k <= 0) {
+            return List.of();
+        }
+        // max-heap on distance, so the farthest of the k candidates is on top
+        PriorityQueue<Neighbour<T>> heap = new PriorityQueue<>(Comparator.comparingDouble(Neighbour<T>::distance).reversed());
+        int row = row(lat);
+        int col = col(lon);
+        // lower bound of the distance of one cell, in meters, taking the smallest longitude degree of the grid
+        double cellDistance = Math.toRadians(cellSize) * GreatCircle.EARTH_RADIUS * Math.cos(Math.toRadians(maxAbsLat));
+        int maxRing = Math.max(rows, cols);
+        for (int ring = 0; ring <= maxRing; ring++) {
+            for (int r = row - ring; r <= row + ring; r++) {
+                if (r < 0 || r >= rows) {
+                    continue;
+                }
+                // full row at the top and bottom of the ring, only the sides otherwise
+                int step = (r == row - ring || r == row + ring) ? 1 : Math.max(1, 2 * ring);
+                for (int c = col - ring; c <= col + ring; c += step) {
+                    if (c < 0 || c >= cols) {
+                        continue;
+                    }
+                    int cell = r * cols + c;
+                    for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+                        double distance = GreatCircle.distance(lat, lon, lats[i], lons[i]);
+                        if (heap.size() < k) {
+                            heap.add(new Neighbour<>((T) items[i], distance));
+                        } else if (distance < heap.peek().distance()) {
+                            heap.poll();
+                            heap.add(new Neighbour<>((T) items[i], distance));
+                        }
+                    }
+                }
+            }
+            // items outside this ring are at least 'ring' cells away
+            if (heap.size() == k && heap.peek().distance() <= ring * cellDistance) {
+                break;
+            }
+        }
+        List<Neighbour<T>> result = new ArrayList<>(heap);
+        result.sort(Comparator.comparingDouble(Neighbour::distance));
+        return result;
+    }
+
+    public int size() {
+        return items.length;
+    }
+
+    /**
+     * An item with its distance in meters.
+     */
+    public record Neighbour<T>(T item, double distance) {
+    }
+
+    public interface IVisitor<T> {
+        void visit(T item);
+    }
+}
@@ -0,0 +1,45 @@
+package nl.bertriksikken.verkeersdrukte.app;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.MultivaluedMap;
+import jakarta.ws.rs.ext.MessageBodyWriter;
+import jakarta.ws.rs.ext.Provider;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+/**
+ * Writes response entities as CBOR, for resource methods that produce {@link #APPLICATION_CBOR}.
+ */
+@Provider
+@Produces(CborMessageBodyWriter.APPLICATION_CBOR)
+final class CborMessageBodyWriter implements MessageBodyWriter<Object> {
+
+    static final String APPLICATION_CBOR = "application/cbor";
+    static final MediaType APPLICATION_CBOR_TYPE = MediaType.valueOf(APPLICATION_CBOR);
+
+    private static final ObjectMapper MAPPER = new CBORMapper().findAndRegisterModules();
+
+    /**
+     * Returns the mapper that writes the CBOR responses, for resources that pre-render their CBOR content.
+     */
+    static ObjectMapper mapper() {
+        return MAPPER;
+    }
+
+    @Override
+    public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return APPLICATION_CBOR_TYPE.isCompatible(mediaType) && !mediaType.isWildcardType();
+    }
+
+    @Override
+    public void writeTo(Object value, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType,
+                        MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream) throws IOException {
+        MAPPER.writeValue(entityStream, value);
+    }
+}
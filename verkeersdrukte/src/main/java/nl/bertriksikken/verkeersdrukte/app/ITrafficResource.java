@@ -2,12 +2,17 @@ package nl.bertriksikken.verkeersdrukte.app;
 
 import io.swagger.v3.oas.annotations.OpenAPIDefinition;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.info.Contact;
 import io.swagger.v3.oas.annotations.info.Info;
 import io.swagger.v3.oas.annotations.servers.Server;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.ws.rs.HeaderParam;
 import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.QueryParam;
 import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.Request;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.sse.Sse;
 import jakarta.ws.rs.sse.SseEventSink;
@@ -30,15 +35,31 @@ public interface ITrafficResource {
     @Operation(hidden = true)
     Response getIndex();
 
-    @Operation(summary = "Get GeoJSON containing all locations", tags = {"static"})
-    FeatureCollection getStatic();
+    @Operation(summary = "Get GeoJSON containing all locations, optionally within a bounding box", tags = {"static"})
+    Response getStatic(@Context Request request, @Context HttpHeaders headers,
+                       @Parameter(description = "minLon,minLat,maxLon,maxLat") @QueryParam("bbox") String bbox);
 
     @Operation(summary = "Get static data for a specific location", tags = {"static"})
     Optional<FeatureCollection.Feature> getStatic(@PathParam("location") String location);
 
+    @Operation(summary = "Get dynamic traffic data for all locations (optionally within a bounding box), with the version", tags = {"dynamic"})
+    Response getDynamic(@Context Request request, @Context HttpHeaders headers,
+                        @Parameter(description = "minLon,minLat,maxLon,maxLat") @QueryParam("bbox") String bbox);
+
+    @Operation(summary = "Get dynamic traffic data of the locations that changed since a version",
+            description = "A location whose data expired is listed with a null value", tags = {"dynamic"})
+    TrafficResource.DynamicBulkJson getDynamicChanges(@QueryParam("since") long since);
+
     @Operation(summary = "Get dynamic traffic data for a specific location", tags = {"dynamic"})
     Optional<TrafficResource.DynamicDataJson> getDynamic(@PathParam("location") String location);
 
     @Operation(summary = "Get event stream with dynamic traffic data for a specific location", tags = {"dynamic"})
-    void getTrafficEvents(@Context Sse sse, @Context SseEventSink sseEventSink, @PathParam("location") String location);
+    void getTrafficEvents(@Context Sse sse, @Context SseEventSink sseEventSink, @PathParam("location") String location,
+                          @Parameter(hidden = true) @HeaderParam(HttpHeaders.LAST_EVENT_ID_HEADER) String lastEventId);
+
+    @Operation(summary = "Get event stream with the changed dynamic traffic data of a set of locations (and/or a bounding box)", tags = {"dynamic"})
+    void getTrafficEvents(@Context Sse sse, @Context SseEventSink sseEventSink,
+                          @Parameter(description = "comma separated locations") @QueryParam("locations") String locations,
+                          @Parameter(description = "minLon,minLat,maxLon,maxLat") @QueryParam("bbox") String bbox,
+                          @Parameter(hidden = true) @HeaderParam(HttpHeaders.LAST_EVENT_ID_HEADER) String lastEventId);
 }
@@ -0,0 +1,89 @@
+package nl.bertriksikken.verkeersdrukte.app;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import jakarta.inject.Singleton;
+import jakarta.ws.rs.BadRequestException;
+import jakarta.ws.rs.DefaultValue;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.MediaType;
+import nl.bertriksikken.datex2v3.PointCoordinates;
+import nl.bertriksikken.datex2v3.VmsController;
+import nl.bertriksikken.geojson.FeatureCollection;
+import nl.bertriksikken.geojson.FeatureCollection.Feature;
+import nl.bertriksikken.geojson.FeatureCollection.PointGeometry;
+import nl.bertriksikken.spatial.GridIndex.Neighbour;
+import nl.bertriksikken.verkeersdrukte.traffic.ITrafficHandler;
+import nl.bertriksikken.verkeersdrukte.traffic.TrafficConfig;
+
+import java.util.Objects;
+
+/**
+ * Finds the traffic sites or DRIPs nearest to a coordinate.
+ */
+@Path(NearestResource.PATH)
+@Produces(MediaType.APPLICATION_JSON)
+@Singleton
+public final class NearestResource {
+
+    static final String PATH = "/nearest";
+    static final int MAX_K = 100;
+
+    private final ITrafficHandler handler;
+    private final TrafficConfig config;
+
+    NearestResource(ITrafficHandler handler, TrafficConfig config) {
+        this.handler = Objects.requireNonNull(handler);
+        this.config = Objects.requireNonNull(config);
+    }
+
+    @Operation(summary = "Get GeoJSON with the locations nearest to a coordinate, with their distance in meters",
+            tags = {"static"})
+    @GET
+    public FeatureCollection getNearest(@QueryParam("lat") Double lat, @QueryParam("lon") Double lon,
+                                        @Parameter(description = "number of locations, at most " + MAX_K)
+                                        @QueryParam("k") @DefaultValue("10") int k,
+                                        @Parameter(description = "traffic or drip")
+                                        @QueryParam("type") @DefaultValue("traffic") String type) {
+        if (lat == null || lon == null || Math.abs(lat) > 90 || Math.abs(lon) > 180) {
+            throw new BadRequestException("Invalid or missing lat/lon");
+        }
+        if (k < 1 || k > MAX_K) {
+            throw new BadRequestException("k must be between 1 and " + MAX_K);
+        }
+        FeatureCollection featureCollection = new FeatureCollection();
+        switch (type) {
+            case "traffic" -> handler.findNearestSites(lat, lon, k).stream()
+                    .map(this::mapSite)
+                    .forEach(featureCollection::add);
+            case "drip" -> handler.findNearestDrips(lat, lon, k).stream()
+                    .map(this::mapDrip)
+                    .forEach(featureCollection::add);
+            default -> throw new BadRequestException("Unknown type: " + type);
+        }
+        return featureCollection;
+    }
+
+    private Feature mapSite(Neighbour<Feature> neighbour) {
+        Feature feature = new Feature(neighbour.item());
+        feature.addProperty("distance", Math.round(neighbour.distance()));
+        if (neighbour.item().getProperties().get("dgl_loc") instanceof String location) {
+            String path = TrafficResource.TRAFFIC_PATH + TrafficResource.STATIC_PATH + "/" + location;
+            feature.addProperty("staticDataUrl", config.getBaseUrl() + path);
+        }
+        return feature;
+    }
+
+    private Feature mapDrip(Neighbour<VmsController> neighbour) {
+        VmsController controller = neighbour.item();
+        PointCoordinates coordinates = controller.findLocationData();
+        Feature feature = new Feature(new PointGeometry(coordinates.latitude(), coordinates.longitude()));
+        feature.addProperty("id", controller.getId());
+        feature.addProperty("distance", Math.round(neighbour.distance()));
+        feature.addProperty("staticDataUrl", DripResource.PATH + DripResource.STATIC_PATH + "/" + controller.getId());
+        return feature;
+    }
+}
@@ -0,0 +1,139 @@
+package nl.bertriksikken.verkeersdrukte.app;
+
+import com.google.common.base.Splitter;
+import com.google.common.hash.Hashing;
+import jakarta.ws.rs.core.EntityTag;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.Request;
+import jakarta.ws.rs.core.Response;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A response entity that is rendered once and served many times, as identity and gzip encoded bytes.
+ * <p>
+ * Each encoding has a strong entity tag derived from the content, so conditional requests get a 304.
+ */
+final class RenderedEntity {
+
+    private final String mediaType;
+    private final byte[] identity;
+    private final byte[] gzip;
+    private final EntityTag identityTag;
+    private final EntityTag gzipTag;
+    private final Date lastModified;
+
+    private RenderedEntity(String mediaType, byte[] identity, byte[] gzip, Instant lastModified) {
+        this.mediaType = mediaType;
+        this.lastModified = (lastModified != null) ? Date.from(lastModified.truncatedTo(ChronoUnit.SECONDS)) : null;
+        this.identity = identity;
+        this.gzip = gzip;
+        String hash = Hashing.sha256().hashBytes(identity).toString().substring(0, 32);
+        this.identityTag = new EntityTag(hash);
+        this.gzipTag = new EntityTag(hash + "-gzip");
+    }
+
+    static RenderedEntity of(String mediaType, byte[] data) {
+        return new RenderedEntity(mediaType, data, compress(data), null);
+    }
+
+    /**
+     * Creates a rendered entity that also has a last-modified time, for If-Modified-Since requests.
+     */
+    static RenderedEntity of(String mediaType, byte[] data, Instant lastModified) {
+        return new RenderedEntity(mediaType, data, compress(data), lastModified);
+    }
+
+    private static byte[] compress(byte[] data) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(data.length / 4);
+        try (GZIPOutputStream gzos = new GZIPOutputStream(bos)) {
+            gzos.write(data);
+        } catch (IOException e) {
+            // cannot happen with an in-memory stream
+            throw new UncheckedIOException(e);
+        }
+        return bos.toByteArray();
+    }
+
+    /**
+     * Builds a response for a request, gzip encoded if the client accepts it, or a 304 if the client has it already.
+     */
+    Response toResponse(Request request, HttpHeaders headers) {
+        boolean useGzip = acceptsGzip(headers);
+        EntityTag tag = useGzip ? gzipTag : identityTag;
+        Response.ResponseBuilder builder = (lastModified != null) ?
+                request.evaluatePreconditions(lastModified, tag) : request.evaluatePreconditions(tag);
+        if (builder == null) {
+            builder = Response.ok(useGzip ? gzip : identity, mediaType);
+            if (useGzip) {
+                builder.encoding("gzip");
+            }
+        }
+        if (lastModified != null) {
+            builder.lastModified(lastModified);
+        }
+        return builder.tag(tag).header(HttpHeaders.VARY, HttpHeaders.ACCEPT + ", " + HttpHeaders.ACCEPT_ENCODING).build();
+    }
+
+    private static boolean acceptsGzip(HttpHeaders headers) {
+        return acceptsGzip(headers.getHeaderString(HttpHeaders.ACCEPT_ENCODING));
+    }
+
+    /**
+     * Returns whether an Accept-Encoding header value allows gzip, either explicitly or through "*", with a non-zero
+     * quality value.
+     */
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        double gzipQuality = -1;
+        double anyQuality = -1;
+        for (String element : Splitter.on(',').trimResults().split(acceptEncoding)) {
+            List<String> parts = Splitter.on(';').trimResults().splitToList(element);
+            String coding = parts.get(0).toLowerCase(Locale.ROOT);
+            double quality = 1.0;
+            for (String parameter : parts.subList(1, parts.size())) {
+                if (parameter.startsWith("q=") || parameter.startsWith("Q=")) {
+                    quality = parseQuality(parameter.substring(2));
+                }
+            }
+            switch (coding) {
+                case "gzip", "x-gzip" -> gzipQuality = quality;
+                case "*" -> anyQuality = quality;
+                default -> {
+                    // not relevant
+                }
+            }
+        }
+        return ((gzipQuality >= 0) ? gzipQuality : anyQuality) > 0;
+    }
+
+    private static double parseQuality(String value) {
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            // an unparseable quality does not count as acceptance
+            return 0;
+        }
+    }
+
+    /**
+     * Returns the entity tag of the identity encoding, which identifies the content.
+     */
+    EntityTag tag() {
+        return identityTag;
+    }
+
+    int size() {
+        return identity.length;
+    }
+}
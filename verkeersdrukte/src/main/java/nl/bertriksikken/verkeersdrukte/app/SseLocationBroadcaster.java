@@ -0,0 +1,186 @@
+package nl.bertriksikken.verkeersdrukte.app;
+
+import jakarta.ws.rs.sse.OutboundSseEvent;
+import jakarta.ws.rs.sse.Sse;
+import jakarta.ws.rs.sse.SseBroadcaster;
+import jakarta.ws.rs.sse.SseEventSink;
+import nl.bertriksikken.verkeersdrukte.traffic.ITrafficHandler;
+import nl.bertriksikken.verkeersdrukte.traffic.ITrafficHandler.ETopic;
+import nl.bertriksikken.verkeersdrukte.traffic.SiteMeasurement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Pushes dynamic data of a location to all server-sent event clients subscribed to that location.
+ * <p>
+ * There is one channel per location with subscribers, the event for a location is serialized once per update and
+ * broadcast asynchronously to all its clients, so no thread is kept waiting per client. Each channel subscribes to
+ * its own location at the traffic handler, so it is only woken up when its location got a new measurement.
+ */
+final class SseLocationBroadcaster {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SseLocationBroadcaster.class);
+
+    private final Map<String, Channel> channels = new ConcurrentHashMap<>();
+    private final ITrafficHandler handler;
+    private final Function<SiteMeasurement, String> serializer;
+
+    SseLocationBroadcaster(ITrafficHandler handler, Function<SiteMeasurement, String> serializer) {
+        this.handler = Objects.requireNonNull(handler);
+        this.serializer = Objects.requireNonNull(serializer);
+    }
+
+    /**
+     * Subscribes a client to a location, sending it the current measurement right away.
+     * <p>
+     * A reconnecting client passes the id of the last event it got, in that case it first gets the measurements it
+     * missed, as far as they are still in the history.
+     */
+    void subscribe(Sse sse, SseEventSink sink, String location, Long lastEventId) {
+        List<SiteMeasurement> missed = getMissed(location, lastEventId);
+        // retry if the channel was closed for lack of clients in the meantime
+        while (!channels.computeIfAbsent(location, key -> new Channel(location, sse)).add(sink, missed)) {
+            LOG.info("Channel for '{}' closed while subscribing, retrying", location);
+        }
+        LOG.info("Subscribed client for '{}', {} clients", location, getClientCount());
+    }
+
+    private List<SiteMeasurement> getMissed(String location, Long lastEventId) {
+        List<SiteMeasurement> missed = new ArrayList<>();
+        long afterMillis = Long.MIN_VALUE;
+        if (lastEventId != null) {
+            // event ids are in minutes
+            afterMillis = (lastEventId + 1) * 60_000 - 1;
+            missed.addAll(handler.getDynamicHistory(location, Instant.ofEpochMilli(afterMillis)));
+        }
+        SiteMeasurement current = handler.getDynamicData(location);
+        if (current != null && current.getDateTime() != null) {
+            long currentMillis = current.getDateTime().toEpochMilli();
+            long lastMillis = missed.isEmpty() ? afterMillis : missed.getLast().getDateTime().toEpochMilli();
+            if (currentMillis > lastMillis) {
+                missed.add(current);
+            }
+        }
+        return missed;
+    }
+
+    int getClientCount() {
+        return channels.values().stream().mapToInt(c -> c.sinks.size()).sum();
+    }
+
+    void close() {
+        channels.values().forEach(Channel::close);
+        channels.clear();
+    }
+
+    private OutboundSseEvent createEvent(Sse sse, SiteMeasurement measurement) {
+        String id = String.valueOf(measurement.getDateTime().getEpochSecond() / 60);
+        return sse.newEventBuilder().id(id).data(serializer.apply(measurement)).build();
+    }
+
+    private final class Channel {
+        private final String location;
+        private final Sse sse;
+        private final SseBroadcaster broadcaster;
+        private final Set<SseEventSink> sinks = ConcurrentHashMap.newKeySet();
+        private long lastDateTime = Long.MIN_VALUE;
+        private boolean closed;
+
+        Channel(String location, Sse sse) {
+            this.location = location;
+            this.sse = sse;
+            this.broadcaster = sse.newBroadcaster();
+            broadcaster.onClose(sinks::remove);
+            broadcaster.onError((sink, throwable) -> {
+                LOG.info("Error sending to client for '{}': {}", location, throwable.getMessage());
+                sinks.remove(sink);
+            });
+            handler.subscribe(clientId(), ETopic.TRAFFIC_SPEED, location, this::notifyUpdate);
+        }
+
+        private String clientId() {
+            return "sse-" + location;
+        }
+
+        /**
+         * Adds a client, sending it the measurements it missed first, returns false if the channel is closed already.
+         * <p>
+         * The latest measurement is only sent to the new client if the channel sent it to the others already,
+         * otherwise it is broadcast to all, so no client gets it twice or misses it.
+         */
+        synchronized boolean add(SseEventSink sink, List<SiteMeasurement> missed) {
+            if (closed) {
+                return false;
+            }
+            SiteMeasurement latest = missed.isEmpty() ? null : missed.getLast();
+            boolean broadcastLatest = (latest != null) && (latest.getDateTime().toEpochMilli() != lastDateTime);
+            List<SiteMeasurement> direct = broadcastLatest ? missed.subList(0, missed.size() - 1) : missed;
+            for (SiteMeasurement measurement : direct) {
+                try {
+                    sink.send(createEvent(sse, measurement));
+                } catch (IllegalStateException e) {
+                    LOG.info("Client for '{}' closed while catching up", location);
+                    return true;
+                }
+            }
+            sinks.add(sink);
+            broadcaster.register(sink);
+            if (broadcastLatest) {
+                send(latest);
+            }
+            return true;
+        }
+
+        // closes the channel if it has no clients, returns whether it did
+        synchronized boolean closeIfEmpty() {
+            if (!sinks.isEmpty()) {
+                return false;
+            }
+            close();
+            return true;
+        }
+
+        synchronized void close() {
+            closed = true;
+            handler.unsubscribe(clientId());
+            broadcaster.close();
+        }
+
+        // called by the traffic handler when this location got a new measurement
+        private void notifyUpdate() {
+            sinks.removeIf(SseEventSink::isClosed);
+            Channel remaining = channels.computeIfPresent(location, (key, channel) -> {
+                if (channel.closeIfEmpty()) {
+                    LOG.info("No more clients for '{}'", location);
+                    return null;
+                }
+                return channel;
+            });
+            if (remaining == null) {
+                return;
+            }
+            SiteMeasurement measurement = handler.getDynamicData(location);
+            if (measurement != null && measurement.getDateTime() != null) {
+                send(measurement);
+            }
+        }
+
+        // serializes once, sends to all clients of this location, unless already sent
+        private synchronized void send(SiteMeasurement measurement) {
+            long dateTime = measurement.getDateTime().toEpochMilli();
+            if (!closed && dateTime != lastDateTime) {
+                lastDateTime = dateTime;
+                broadcaster.broadcast(createEvent(sse, measurement));
+            }
+        }
+    }
+}
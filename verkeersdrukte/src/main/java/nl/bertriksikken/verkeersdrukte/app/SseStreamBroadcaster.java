@@ -0,0 +1,162 @@
+package nl.bertriksikken.verkeersdrukte.app;
+
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import jakarta.ws.rs.sse.OutboundSseEvent;
+import jakarta.ws.rs.sse.Sse;
+import jakarta.ws.rs.sse.SseBroadcaster;
+import jakarta.ws.rs.sse.SseEventSink;
+import nl.bertriksikken.verkeersdrukte.traffic.ITrafficHandler;
+import nl.bertriksikken.verkeersdrukte.traffic.ITrafficHandler.ETopic;
+import nl.bertriksikken.verkeersdrukte.traffic.SiteMeasurement;
+import nl.bertriksikken.verkeersdrukte.traffic.TrafficSnapshot;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Pushes dynamic data of a set of locations to server-sent event clients, with one batched event per update
+ * containing the sites of the set that changed.
+ * <p>
+ * The JSON of each changed site is serialized once per update and shared by all streams containing that site. A site
+ * whose data expired is sent with a null value. Each stream sends through its own broadcaster, which writes
+ * asynchronously, so a slow client does not hold up the others. The event id is the snapshot version, so a client can
+ * catch up with the changes request after a reconnect.
+ */
+final class SseStreamBroadcaster {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SseStreamBroadcaster.class);
+
+    private final Set<Stream> streams = ConcurrentHashMap.newKeySet();
+    private final ITrafficHandler handler;
+    private final Function<SiteMeasurement, String> serializer;
+
+    SseStreamBroadcaster(ITrafficHandler handler, Function<SiteMeasurement, String> serializer) {
+        this.handler = Objects.requireNonNull(handler);
+        this.serializer = Objects.requireNonNull(serializer);
+        handler.subscribe("sse-streams", ETopic.TRAFFIC_SPEED, null, this::notifyUpdate);
+    }
+
+    /**
+     * Subscribes a client to a set of locations, sending it the current measurements of that set right away.
+     * <p>
+     * A reconnecting client passes the id of the last event it got, in that case it only gets the sites that changed
+     * since, if that version is recent enough.
+     */
+    void subscribe(Sse sse, SseEventSink sink, Set<String> locations, Long lastEventId) {
+        TrafficSnapshot snapshot = handler.getSnapshot();
+        // an id from the future is as good as none
+        long since = (lastEventId != null && lastEventId <= snapshot.version()) ? lastEventId : -1;
+        Stream stream = new Stream(sse, sink, Set.copyOf(locations), since);
+        // register first, so an update that is published while catching up is not lost
+        streams.add(stream);
+        stream.update(snapshot, new HashMap<>(), new HashMap<>());
+        LOG.info("Subscribed stream for {} locations, {} streams", locations.size(), streams.size());
+    }
+
+    int getStreamCount() {
+        return streams.size();
+    }
+
+    // called by the traffic handler when any location got a new measurement
+    private void notifyUpdate() {
+        streams.removeIf(Stream::closeIfDone);
+        if (streams.isEmpty()) {
+            return;
+        }
+        TrafficSnapshot snapshot = handler.getSnapshot();
+        // shared by all streams, most are at the same version
+        Map<Long, Set<String>> changes = new HashMap<>();
+        Map<String, String> fragments = new HashMap<>();
+        for (Stream stream : streams) {
+            stream.update(snapshot, changes, fragments);
+        }
+    }
+
+    private String fragment(TrafficSnapshot snapshot, String location) {
+        SiteMeasurement measurement = snapshot.getMeasurement(location);
+        return (measurement != null) ? serializer.apply(measurement) : "null";
+    }
+
+    private final class Stream {
+        private final Sse sse;
+        private final SseEventSink sink;
+        private final Set<String> locations;
+        private final SseBroadcaster broadcaster;
+        // snapshot version this stream was last updated to, -1 if it needs everything
+        private long version;
+
+        Stream(Sse sse, SseEventSink sink, Set<String> locations, long version) {
+            this.sse = sse;
+            this.sink = sink;
+            this.locations = locations;
+            this.version = version;
+            this.broadcaster = sse.newBroadcaster();
+            broadcaster.onClose(closed -> streams.remove(this));
+            broadcaster.onError((closed, throwable) -> {
+                LOG.info("Error sending to stream: {}", throwable.getMessage());
+                streams.remove(this);
+            });
+            broadcaster.register(sink);
+        }
+
+        // sends the sites that changed since the version of this stream, or all sites if that version is unknown
+        synchronized void update(TrafficSnapshot snapshot, Map<Long, Set<String>> changes,
+                                 Map<String, String> fragments) {
+            if (snapshot.version() <= version) {
+                return;
+            }
+            Set<String> changed = (version < 0) ? null : changes.computeIfAbsent(version, snapshot::changedSince);
+            version = snapshot.version();
+            Collection<String> sites = (changed == null) ? locations : intersect(changed);
+            if (sites.isEmpty()) {
+                return;
+            }
+            // a site without data is only news if it was there before
+            boolean withRemoved = (changed != null);
+            StringBuilder data = new StringBuilder();
+            data.append("{\"version\":").append(version).append(",\"sites\":{");
+            boolean first = true;
+            for (String site : sites) {
+                String fragment = fragments.computeIfAbsent(site, location -> fragment(snapshot, location));
+                if (withRemoved || !fragment.equals("null")) {
+                    data.append(first ? "\"" : ",\"");
+                    JsonStringEncoder.getInstance().quoteAsString(site, data);
+                    data.append("\":").append(fragment);
+                    first = false;
+                }
+            }
+            data.append("}}");
+            OutboundSseEvent event = sse.newEventBuilder().id(String.valueOf(version)).data(data.toString()).build();
+            try {
+                broadcaster.broadcast(event);
+            } catch (IllegalStateException e) {
+                LOG.info("Stream closed while sending: {}", e.getMessage());
+                streams.remove(this);
+            }
+        }
+
+        // closes the broadcaster of a stream whose client went away, returns whether it did
+        boolean closeIfDone() {
+            if (!sink.isClosed()) {
+                return false;
+            }
+            broadcaster.close();
+            return true;
+        }
+
+        // iterates the smaller of the two sets
+        Collection<String> intersect(Set<String> changed) {
+            if (changed.size() < locations.size()) {
+                return changed.stream().filter(locations::contains).toList();
+            }
+            return locations.stream().filter(changed::contains).toList();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package nl.bertriksikken.verkeersdrukte.app;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.dropwizard.jersey.caching.CacheControl;
+import io.swagger.v3.oas.annotations.Operation;
+import jakarta.inject.Singleton;
+import jakarta.ws.rs.BadRequestException;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.NotFoundException;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.Produces;
+import nl.bertriksikken.datex2v3.PointCoordinates;
+import nl.bertriksikken.datex2v3.VmsController;
+import nl.bertriksikken.datex2v3.VmsPayload;
+import nl.bertriksikken.geojson.FeatureCollection.Feature;
+import nl.bertriksikken.geojson.FeatureCollection.PointGeometry;
+import nl.bertriksikken.mvt.VectorTileEncoder;
+import nl.bertriksikken.spatial.BoundingBox;
+import nl.bertriksikken.verkeersdrukte.traffic.ITrafficHandler;
+import nl.bertriksikken.verkeersdrukte.traffic.SiteMeasurement;
+import nl.bertriksikken.verkeersdrukte.traffic.SiteMeasurement.LaneMeasurement;
+import nl.bertriksikken.verkeersdrukte.traffic.TrafficSnapshot;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves traffic sites and DRIPs as Mapbox vector tiles.
+ * <p>
+ * Encoded tiles are kept in an LRU cache, keyed by the version of the data they were made from, so each tile is
+ * encoded at most once per data version.
+ */
+@Path(TileResource.PATH)
+@Singleton
+public final class TileResource {
+
+    static final String PATH = "/tiles";
+    static final String LAYER_TRAFFIC = "traffic";
+    static final String LAYER_DRIPS = "drips";
+    private static final int MAX_TILES = 2000;
+    // no point in tiles smaller than the spacing of the sites
+    private static final int MAX_ZOOM = 18;
+
+    private final ITrafficHandler handler;
+    private final Cache<TileKey, byte[]> cache = CacheBuilder.newBuilder().maximumSize(MAX_TILES).build();
+    private final SourceVersion trafficVersion = new SourceVersion();
+    private final SourceVersion dripVersion = new SourceVersion();
+
+    TileResource(ITrafficHandler handler) {
+        this.handler = Objects.requireNonNull(handler);
+    }
+
+    @Operation(summary = "Get a vector tile with the traffic or drips layer", tags = {"static"})
+    @GET
+    @Path("/{layer}/{z}/{x}/{y}.mvt")
+    @Produces(VectorTileEncoder.MEDIA_TYPE)
+    @CacheControl(maxAge = 1, maxAgeUnit = TimeUnit.MINUTES)
+    public byte[] getTile(@PathParam("layer") String layer, @PathParam("z") int z, @PathParam("x") int x,
+                          @PathParam("y") int y) {
+        if (z > MAX_ZOOM) {
+            throw new NotFoundException();
+        }
+        VectorTileEncoder encoder;
+        try {
+            encoder = new VectorTileEncoder(z, x, y);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException(e.getMessage());
+        }
+        try {
+            return switch (layer) {
+                case LAYER_TRAFFIC -> {
+                    TrafficSnapshot snapshot = handler.getSnapshot();
+                    long version = trafficVersion.get(snapshot, handler.getStaticData());
+                    yield cache.get(new TileKey(layer, z, x, y, version), () -> encodeTraffic(encoder, snapshot));
+                }
+                case LAYER_DRIPS -> {
+                    VmsPayload payload = handler.getVmsPayload();
+                    long version = dripVersion.get(payload, null);
+                    yield cache.get(new TileKey(layer, z, x, y, version), () -> encodeDrips(encoder));
+                }
+                default -> throw new NotFoundException();
+            };
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private byte[] encodeTraffic(VectorTileEncoder encoder, TrafficSnapshot snapshot) {
+        BoundingBox bbox = encoder.getBoundingBox();
+        VectorTileEncoder.Layer layer = encoder.addLayer(LAYER_TRAFFIC);
+        long id = 0;
+        for (Feature feature : handler.getStaticData(bbox)) {
+            if (feature.getProperties().get("dgl_loc") instanceof String location
+                    && feature.getGeometry() instanceof PointGeometry point) {
+                Map<String, Object> attributes = new LinkedHashMap<>();
+                attributes.put("id", location);
+                SiteMeasurement measurement = snapshot.getMeasurement(location);
+                if (measurement != null) {
+                    LaneMeasurement aggregate = measurement.aggregate();
+                    attributes.put("flow", Double.isFinite(aggregate.flow()) ? Math.round(aggregate.flow()) : null);
+                    attributes.put("speed", Double.isFinite(aggregate.speed()) ? Math.round(aggregate.speed()) : null);
+                }
+                layer.addPoint(id++, point.getLatitude(), point.getLongitude(), attributes);
+            }
+        }
+        return encoder.encode();
+    }
+
+    private byte[] encodeDrips(VectorTileEncoder encoder) {
+        VectorTileEncoder.Layer layer = encoder.addLayer(LAYER_DRIPS);
+        long id = 0;
+        for (VmsController controller : handler.getDrips(encoder.getBoundingBox())) {
+            PointCoordinates coordinates = controller.findLocationData();
+            layer.addPoint(id++, coordinates.latitude(), coordinates.longitude(), Map.of("id", controller.getId()));
+        }
+        return encoder.encode();
+    }
+
+    private record TileKey(String layer, int z, int x, int y, long version) {
+    }
+
+    /**
+     * Assigns an increasing version number to the data sources of a layer, by object identity.
+     */
+    private static final class SourceVersion {
+        private Object first;
+        private Object second;
+        private long version;
+
+        @SuppressWarnings("ReferenceEquality") // identity is what matters here
+        synchronized long get(Object first, Object second) {
+            if (first != this.first || second != this.second) {
+                this.first = first;
+                this.second = second;
+                version++;
+            }
+            return version;
+        }
+    }
+}
@@ -3,41 +3,61 @@ package nl.bertriksikken.verkeersdrukte.app;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.hash.Hashing;
 import io.dropwizard.jersey.caching.CacheControl;
 import jakarta.inject.Singleton;
+import jakarta.ws.rs.BadRequestException;
 import jakarta.ws.rs.GET;
+import jakarta.ws.rs.HeaderParam;
+import jakarta.ws.rs.InternalServerErrorException;
+import jakarta.ws.rs.NotAcceptableException;
 import jakarta.ws.rs.NotFoundException;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.QueryParam;
 import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.EntityTag;
+import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Request;
 import jakarta.ws.rs.core.Response;
-import jakarta.ws.rs.sse.OutboundSseEvent;
 import jakarta.ws.rs.sse.Sse;
 import jakarta.ws.rs.sse.SseEventSink;
 import nl.bertriksikken.geojson.FeatureCollection;
+import nl.bertriksikken.spatial.BoundingBox;
+import nl.bertriksikken.verkeersdrukte.traffic.ColumnarFormat;
 import nl.bertriksikken.verkeersdrukte.traffic.ITrafficHandler;
 import nl.bertriksikken.verkeersdrukte.traffic.SiteMeasurement;
 import nl.bertriksikken.verkeersdrukte.traffic.TrafficConfig;
+import nl.bertriksikken.verkeersdrukte.traffic.TrafficSnapshot;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.time.Instant;
 import java.time.OffsetDateTime;
+import java.time.temporal.ChronoUnit;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
-import java.util.Queue;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 @Path(TrafficResource.TRAFFIC_PATH)
 @Produces(MediaType.APPLICATION_JSON)
@@ -48,7 +68,11 @@ public final class TrafficResource extends BaseResource implements ITrafficResou
     static final String DYNAMIC_PATH = "/dynamic";
     private static final Logger LOG = LoggerFactory.getLogger(TrafficResource.class);
     private static final ObjectMapper mapper = new ObjectMapper();
-    private final AtomicInteger atomicInteger = new AtomicInteger();
+    private static final MediaType COLUMNAR_TYPE = MediaType.valueOf(ColumnarFormat.MEDIA_TYPE);
+    private final SseLocationBroadcaster broadcaster = new SseLocationBroadcaster(handler, this::toEventData);
+    private final SseStreamBroadcaster streamBroadcaster = new SseStreamBroadcaster(handler, this::toEventData);
+    private volatile RenderedStatic renderedStatic = new RenderedStatic(null, null, Map.of());
+    private volatile RenderedDynamic renderedDynamic = new RenderedDynamic(-1, null, null, Map.of(), Map.of());
 
     TrafficResource(ITrafficHandler handler, TrafficConfig config) {
         super(handler, config);
@@ -64,13 +88,71 @@ public final class TrafficResource extends BaseResource implements ITrafficResou
     @Override
     @GET
     @Path(STATIC_PATH)
-    public FeatureCollection getStatic() {
-        FeatureCollection featureCollection = new FeatureCollection();
-        for (FeatureCollection.Feature feature : handler.getStaticData().getFeatures()) {
-            FeatureCollection.Feature updated = addUrlProperties(feature);
-            featureCollection.add(updated);
+    public Response getStatic(@Context Request request, @Context HttpHeaders headers,
+                              @QueryParam("bbox") String bbox) {
+        RenderedStatic rendered = renderStatic();
+        if (bbox == null) {
+            return rendered.entity().toResponse(request, headers);
         }
-        return featureCollection;
+        // the result only depends on the static data and the bounding box
+        BoundingBox boundingBox = parseBoundingBox(bbox);
+        String tagSource = rendered.entity().tag().getValue() + boundingBox;
+        EntityTag tag = new EntityTag(Hashing.sha256().hashString(tagSource, StandardCharsets.UTF_8).toString()
+                .substring(0, 32));
+        Response.ResponseBuilder builder = request.evaluatePreconditions(tag);
+        if (builder == null) {
+            List<String> fragments = new ArrayList<>();
+            for (FeatureCollection.Feature feature : handler.getStaticData(boundingBox)) {
+                fragments.add(rendered.fragment(feature, this::renderFeature));
+            }
+            builder = Response.ok(writeFeatures(fragments), MediaType.APPLICATION_JSON);
+        }
+        return builder.tag(tag).build();
+    }
+
+    private static BoundingBox parseBoundingBox(String bbox) {
+        try {
+            return BoundingBox.parse(bbox);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException("Invalid bbox: " + e.getMessage());
+        }
+    }
+
+    // renders the static data once per version of the shapefile, both as a whole and per feature
+    private RenderedStatic renderStatic() {
+        FeatureCollection staticData = handler.getStaticData();
+        RenderedStatic rendered = renderedStatic;
+        if (rendered.source() != staticData) {
+            List<FeatureCollection.Feature> features = staticData.getFeatures();
+            IdentityHashMap<FeatureCollection.Feature, String> fragments = new IdentityHashMap<>();
+            List<String> ordered = new ArrayList<>(features.size());
+            for (FeatureCollection.Feature feature : features) {
+                String fragment = renderFeature(feature);
+                fragments.put(feature, fragment);
+                ordered.add(fragment);
+            }
+            RenderedEntity entity = RenderedEntity.of(MediaType.APPLICATION_JSON, writeFeatures(ordered));
+            rendered = new RenderedStatic(staticData, entity, Collections.unmodifiableMap(fragments));
+            LOG.info("Rendered static data, {} features, {} bytes", features.size(), entity.size());
+            renderedStatic = rendered;
+        }
+        return rendered;
+    }
+
+    private String renderFeature(FeatureCollection.Feature feature) {
+        try {
+            return mapper.writeValueAsString(addUrlProperties(feature));
+        } catch (JsonProcessingException e) {
+            throw new InternalServerErrorException(e);
+        }
+    }
+
+    // writes a GeoJSON feature collection from pre-rendered features
+    private static byte[] writeFeatures(List<String> fragments) {
+        StringBuilder sb = new StringBuilder("{\"type\":\"FeatureCollection\",\"features\":[");
+        sb.append(String.join(",", fragments));
+        sb.append("]}");
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
     }
 
     private FeatureCollection.Feature addUrlProperties(FeatureCollection.Feature f) {
@@ -85,14 +167,17 @@ public final class TrafficResource extends BaseResource implements ITrafficResou
             // streetview, see https://stackoverflow.com/questions/387942/google-street-view-url
             FeatureCollection.PointGeometry geometry = (FeatureCollection.PointGeometry) feature.getGeometry();
             int angle = parseIntProperty(properties, "meetricht", 0);
-            String streetviewUrl = String.format(Locale.ROOT,
-                    "https://maps.google.com/maps?layer=c&cbll=%.6f,%.6f&cbp=12,%d,0,0,0",
-                    geometry.getLatitude(), geometry.getLongitude(), angle);
+            String streetviewUrl = "https://maps.google.com/maps?layer=c&cbll=" + formatCoordinate(geometry.getLatitude())
+                    + "," + formatCoordinate(geometry.getLongitude()) + "&cbp=12," + angle + ",0,0,0";
             feature.addProperty("streetviewUrl", streetviewUrl);
         }
         return feature;
     }
 
+    private static String formatCoordinate(double degrees) {
+        return BigDecimal.valueOf(degrees).setScale(6, RoundingMode.HALF_UP).toPlainString();
+    }
+
     private int parseIntProperty(Map<String, Object> properties, String name, int defaultValue) {
         if (properties.get(name) instanceof String string) {
             try {
@@ -111,9 +196,152 @@ public final class TrafficResource extends BaseResource implements ITrafficResou
         return Optional.ofNullable(handler.getStaticData(location)).map(this::addUrlProperties);
     }
 
+    @Override
+    @GET
+    @Path(DYNAMIC_PATH)
+    @Produces({MediaType.APPLICATION_JSON, CborMessageBodyWriter.APPLICATION_CBOR, ColumnarFormat.MEDIA_TYPE})
+    @CacheControl(maxAge = 1, maxAgeUnit = TimeUnit.MINUTES)
+    public Response getDynamic(@Context Request request, @Context HttpHeaders headers,
+                               @QueryParam("bbox") String bbox) {
+        String mediaType = selectMediaType(headers);
+        if (bbox == null) {
+            return renderDynamic(mediaType).toResponse(request, headers);
+        }
+        if (mediaType.equals(ColumnarFormat.MEDIA_TYPE)) {
+            throw new NotAcceptableException("Columnar format is only available without bbox");
+        }
+        // the result only depends on the rendered snapshot, the bounding box and the media type
+        TrafficSnapshot snapshot = handler.getSnapshot();
+        RenderedDynamic rendered = renderedDynamic(snapshot);
+        BoundingBox boundingBox = parseBoundingBox(bbox);
+        String tagSource = rendered.validFrom().toEpochMilli() + mediaType + boundingBox;
+        EntityTag tag = new EntityTag(rendered.version() + "-"
+                + Hashing.sha256().hashString(tagSource, StandardCharsets.UTF_8).toString().substring(0, 16), true);
+        Date lastModified = Date.from(rendered.validFrom().truncatedTo(ChronoUnit.SECONDS));
+        Response.ResponseBuilder builder = request.evaluatePreconditions(lastModified, tag);
+        if (builder == null) {
+            Map<String, SiteMeasurement> sites = new LinkedHashMap<>();
+            for (FeatureCollection.Feature feature : handler.getStaticData(boundingBox)) {
+                if (feature.getProperties().get("dgl_loc") instanceof String location) {
+                    SiteMeasurement measurement = snapshot.getMeasurement(location);
+                    if (measurement != null) {
+                        sites.put(location, measurement);
+                    }
+                }
+            }
+            builder = Response.ok(writeDynamic(rendered, mediaType, sites), mediaType);
+        }
+        return builder.tag(tag).lastModified(lastModified)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT + ", " + HttpHeaders.ACCEPT_ENCODING).build();
+    }
+
+    // JSON, unless the client prefers one of the binary formats
+    private static String selectMediaType(HttpHeaders headers) {
+        for (MediaType acceptable : headers.getAcceptableMediaTypes()) {
+            if (acceptable.isWildcardType() || acceptable.isCompatible(MediaType.APPLICATION_JSON_TYPE)) {
+                return MediaType.APPLICATION_JSON;
+            }
+            if (acceptable.isCompatible(CborMessageBodyWriter.APPLICATION_CBOR_TYPE)) {
+                return CborMessageBodyWriter.APPLICATION_CBOR;
+            }
+            if (acceptable.isCompatible(COLUMNAR_TYPE)) {
+                return ColumnarFormat.MEDIA_TYPE;
+            }
+        }
+        return MediaType.APPLICATION_JSON;
+    }
+
+    // renders the dynamic data of all sites once per traffic snapshot and media type, and again when an entry expires
+    private RenderedEntity renderDynamic(String mediaType) {
+        TrafficSnapshot snapshot = handler.getSnapshot();
+        RenderedDynamic rendered = renderedDynamic(snapshot);
+        return rendered.entities().computeIfAbsent(mediaType, type -> renderDynamic(snapshot, rendered, type));
+    }
+
+    // returns the rendered state of a snapshot, starting over for a new snapshot and when an entry expires
+    private RenderedDynamic renderedDynamic(TrafficSnapshot snapshot) {
+        Instant now = Instant.now();
+        RenderedDynamic rendered = renderedDynamic;
+        if (rendered.version() != snapshot.version()) {
+            rendered = new RenderedDynamic(snapshot.version(), snapshot.published(), snapshot.nextExpiry(now),
+                    new ConcurrentHashMap<>(), new ConcurrentHashMap<>());
+            renderedDynamic = rendered;
+        } else if (rendered.validUntil() != null && !now.isBefore(rendered.validUntil())) {
+            // the content changed at the moment of expiry, so that is its last-modified time
+            rendered = new RenderedDynamic(snapshot.version(), rendered.validUntil(), snapshot.nextExpiry(now),
+                    new ConcurrentHashMap<>(), new ConcurrentHashMap<>());
+            renderedDynamic = rendered;
+        }
+        return rendered;
+    }
+
+    private RenderedEntity renderDynamic(TrafficSnapshot snapshot, RenderedDynamic rendered, String mediaType) {
+        if (mediaType.equals(ColumnarFormat.MEDIA_TYPE)) {
+            return RenderedEntity.of(mediaType, ColumnarFormat.encode(snapshot), rendered.validFrom());
+        }
+        Map<String, SiteMeasurement> sites = new LinkedHashMap<>();
+        snapshot.forEachMeasurement(sites::put);
+        return RenderedEntity.of(mediaType, writeDynamic(rendered, mediaType, sites), rendered.validFrom());
+    }
+
+    // writes the dynamic data of some sites, JSON from the fragments rendered once per snapshot
+    private byte[] writeDynamic(RenderedDynamic rendered, String mediaType, Map<String, SiteMeasurement> sites) {
+        if (mediaType.equals(CborMessageBodyWriter.APPLICATION_CBOR)) {
+            Map<String, DynamicDataJson> json = new LinkedHashMap<>();
+            sites.forEach((location, measurement) -> json.put(location, new DynamicDataJson(measurement)));
+            try {
+                return CborMessageBodyWriter.mapper().writeValueAsBytes(new DynamicBulkJson(rendered.version(), null,
+                        json));
+            } catch (JsonProcessingException e) {
+                throw new InternalServerErrorException(e);
+            }
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"version\":").append(rendered.version()).append(",\"sites\":{");
+        boolean first = true;
+        for (Map.Entry<String, SiteMeasurement> entry : sites.entrySet()) {
+            sb.append(first ? "\"" : ",\"");
+            JsonStringEncoder.getInstance().quoteAsString(entry.getKey(), sb);
+            sb.append("\":");
+            sb.append(rendered.fragments().computeIfAbsent(entry.getKey(), location -> renderSite(entry.getValue())));
+            first = false;
+        }
+        sb.append("}}");
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private String renderSite(SiteMeasurement measurement) {
+        try {
+            return mapper.writeValueAsString(new DynamicDataJson(measurement));
+        } catch (JsonProcessingException e) {
+            throw new InternalServerErrorException(e);
+        }
+    }
+
+    @Override
+    @GET
+    @Path(DYNAMIC_PATH + "/changes")
+    @Produces({MediaType.APPLICATION_JSON, CborMessageBodyWriter.APPLICATION_CBOR})
+    @CacheControl(noCache = true)
+    public DynamicBulkJson getDynamicChanges(@QueryParam("since") long since) {
+        TrafficSnapshot snapshot = handler.getSnapshot();
+        Set<String> changed = snapshot.changedSince(since);
+        if (changed == null) {
+            return new DynamicBulkJson(snapshot.version(), true, Map.of());
+        }
+        // a site without a measurement has expired, it is listed with null so the client can remove it
+        Map<String, DynamicDataJson> sites = new LinkedHashMap<>();
+        for (String location : changed) {
+            SiteMeasurement measurement = snapshot.getMeasurement(location);
+            sites.put(location, (measurement != null) ? new DynamicDataJson(measurement) : null);
+        }
+        return new DynamicBulkJson(snapshot.version(), false, sites);
+    }
+
     @Override
     @GET
     @Path(DYNAMIC_PATH + "/{location}")
+    @Produces({MediaType.APPLICATION_JSON, CborMessageBodyWriter.APPLICATION_CBOR})
     @CacheControl(maxAge = 1, maxAgeUnit = TimeUnit.MINUTES)
     public Optional<DynamicDataJson> getDynamic(@PathParam("location") String location) {
         return Optional.ofNullable(handler.getDynamicData(location)).map(DynamicDataJson::new);
@@ -125,44 +353,100 @@ public final class TrafficResource extends BaseResource implements ITrafficResou
     @Produces(MediaType.SERVER_SENT_EVENTS)
     @CacheControl(noCache = true)
     public void getTrafficEvents(@Context Sse sse, @Context SseEventSink sseEventSink,
-                                 @PathParam("location") String location) {
+                                 @PathParam("location") String location,
+                                 @HeaderParam(HttpHeaders.LAST_EVENT_ID_HEADER) String lastEventId) {
         // verify that location exists
         if (handler.getStaticData(location) == null) {
             throw new NotFoundException();
         }
 
-        //  get initial data
-        String clientId = "client-" + atomicInteger.incrementAndGet();
-        BlockingQueue<SiteMeasurement> queue = new ArrayBlockingQueue<>(3);
-        eventCallback(clientId, queue, location);
-
-        // subscribe to updates
-        LOG.info("Subscribing client '{}' for '{}'", clientId, location);
-        handler.subscribe(clientId, () -> eventCallback(clientId, queue, location));
-        try (sseEventSink) {
-            while (!sseEventSink.isClosed()) {
-                SiteMeasurement measurement = queue.poll(1, TimeUnit.SECONDS);
-                if (measurement != null) {
-                    String id = String.valueOf(measurement.getDateTime().getEpochSecond() / 60);
-                    String json = mapper.writeValueAsString(new DynamicDataJson(measurement));
-                    OutboundSseEvent event = sse.newEventBuilder().id(id).data(json).build();
-                    sseEventSink.send(event);
+        broadcaster.subscribe(sse, sseEventSink, location, parseLastEventId(lastEventId));
+    }
+
+    @Override
+    @GET
+    @Path(DYNAMIC_PATH + "/events")
+    @Produces(MediaType.SERVER_SENT_EVENTS)
+    @CacheControl(noCache = true)
+    public void getTrafficEvents(@Context Sse sse, @Context SseEventSink sseEventSink,
+                                 @QueryParam("locations") String locations, @QueryParam("bbox") String bbox,
+                                 @HeaderParam(HttpHeaders.LAST_EVENT_ID_HEADER) String lastEventId) {
+        if (locations == null && bbox == null) {
+            throw new BadRequestException("Either locations or bbox is required");
+        }
+        Set<String> set = new HashSet<>();
+        if (locations != null) {
+            for (String location : locations.split(",", -1)) {
+                if (handler.getStaticData(location.strip()) != null) {
+                    set.add(location.strip());
                 }
             }
-        } catch (InterruptedException | JsonProcessingException e) {
-            LOG.warn("Error sending SSE: {}", e.getMessage());
-        } finally {
-            LOG.info("Unsubscribing client '{}' for '{}'", clientId, location);
-            handler.unsubscribe(clientId);
         }
+        if (bbox != null) {
+            for (FeatureCollection.Feature feature : handler.getStaticData(parseBoundingBox(bbox))) {
+                if (feature.getProperties().get("dgl_loc") instanceof String location) {
+                    set.add(location);
+                }
+            }
+        }
+        if (set.isEmpty()) {
+            throw new NotFoundException();
+        }
+        streamBroadcaster.subscribe(sse, sseEventSink, set, parseLastEventId(lastEventId));
     }
 
-    private void eventCallback(String clientId, Queue<SiteMeasurement> queue, String location) {
-        SiteMeasurement aggregateMeasurement = handler.getDynamicData(location);
-        if (aggregateMeasurement != null) {
-            if (!queue.offer(aggregateMeasurement)) {
-                LOG.warn("Queue for client '{}' location '{}' got stuck", clientId, location);
-            }
+    // an invalid last event id is treated like a new client
+    private static Long parseLastEventId(String lastEventId) {
+        try {
+            return (lastEventId != null) ? Long.valueOf(lastEventId.strip()) : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private String toEventData(SiteMeasurement measurement) {
+        try {
+            return mapper.writeValueAsString(new DynamicDataJson(measurement));
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private record RenderedStatic(FeatureCollection source, RenderedEntity entity,
+                                  Map<FeatureCollection.Feature, String> fragments) {
+        // features are the same instances as in the source, render anything else on the fly
+        String fragment(FeatureCollection.Feature feature, Function<FeatureCollection.Feature, String> renderer) {
+            String fragment = fragments.get(feature);
+            return (fragment != null) ? fragment : renderer.apply(feature);
+        }
+    }
+
+    // the JSON fragments per site are shared by the bulk response and the bbox responses
+    private record RenderedDynamic(long version, Instant validFrom, Instant validUntil,
+                                   Map<String, RenderedEntity> entities, Map<String, String> fragments) {
+    }
+
+    /**
+     * Dynamic data of multiple sites, with the snapshot version to ask for changes since.
+     * Resync is set on a changes request, if it is true the client should get the full data. In a changes response, a
+     * site whose data expired has a null value.
+     */
+    @SuppressWarnings("unused")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    static final class DynamicBulkJson {
+        @JsonProperty("version")
+        private final long version;
+
+        @JsonProperty("resync")
+        private final Boolean resync;
+
+        @JsonProperty("sites")
+        private final Map<String, DynamicDataJson> sites;
+
+        DynamicBulkJson(long version, Boolean resync, Map<String, DynamicDataJson> sites) {
+            this.version = version;
+            this.resync = resync;
+            this.sites = sites;
         }
     }
 
@@ -46,6 +46,15 @@ public final class VerkeersDrukteApp extends Application<VerkeersDrukteAppConfig
         DripResource dripResource = new DripResource(ndwHandler, configuration.getTrafficConfig());
         environment.jersey().register(dripResource);
 
+        NearestResource nearestResource = new NearestResource(ndwHandler, configuration.getTrafficConfig());
+        environment.jersey().register(nearestResource);
+
+        TileResource tileResource = new TileResource(ndwHandler);
+        environment.jersey().register(tileResource);
+
+        // binary output for machine-to-machine clients
+        environment.jersey().register(new CborMessageBodyWriter());
+
         // Add headers to each response
         environment.jersey().register((ContainerResponseFilter) this::addHeaders);
     }
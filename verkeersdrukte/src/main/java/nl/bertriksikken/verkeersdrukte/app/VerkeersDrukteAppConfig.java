@@ -3,6 +3,7 @@ package nl.bertriksikken.verkeersdrukte.app;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import io.dropwizard.core.Configuration;
+import io.dropwizard.core.server.AbstractServerFactory;
 import nl.bertriksikken.verkeersdrukte.ndw.NdwConfig;
 import nl.bertriksikken.verkeersdrukte.traffic.TrafficConfig;
 
@@ -29,4 +30,12 @@ public final class VerkeersDrukteAppConfig extends Configuration {
     public Map<String, String> getHeaders() {
         return Map.copyOf(headers);
     }
+
+    /**
+     * Returns whether the server runs its requests on virtual threads, the background downloads follow the same mode.
+     */
+    public boolean useVirtualThreads() {
+        return (getServerFactory() instanceof AbstractServerFactory serverFactory)
+                && serverFactory.isEnableVirtualThreads();
+    }
 }
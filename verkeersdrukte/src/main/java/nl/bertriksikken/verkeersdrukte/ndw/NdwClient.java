@@ -17,6 +17,11 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
 
@@ -54,14 +59,33 @@ public final class NdwClient implements AutoCloseable {
         httpClient.connectionPool().evictAll();
     }
 
-    public FileResponse getVmsPayload() throws IOException {
-        Map<String, String> headers = Map.of(HttpHeaders.ACCEPT_ENCODING, "gzip");
-        return getFile(INdwApi.VMS_PAYLOAD, headers);
+    /**
+     * Downloads the VMS payload, unless it was not modified since the specified e-tag and/or last-modified time,
+     * handing the (gzipped) body to the handler while it is still being received.
+     */
+    public FileResponse getVmsPayload(String etag, Instant lastModified, IStreamHandler handler) throws IOException {
+        return getFile(INdwApi.VMS_PAYLOAD, conditionalHeaders(etag, lastModified), handler);
     }
 
-    public FileResponse getTrafficSpeed() throws IOException {
-        Map<String, String> headers = Map.of(HttpHeaders.ACCEPT_ENCODING, "gzip");
-        return getFile(INdwApi.TRAFFIC_SPEED_XML_GZ, headers);
+    /**
+     * Downloads the traffic speed, unless it was not modified since the specified e-tag and/or last-modified time,
+     * handing the (gzipped) body to the handler while it is still being received.
+     */
+    public FileResponse getTrafficSpeed(String etag, Instant lastModified, IStreamHandler handler) throws IOException {
+        return getFile(INdwApi.TRAFFIC_SPEED_XML_GZ, conditionalHeaders(etag, lastModified), handler);
+    }
+
+    private static Map<String, String> conditionalHeaders(String etag, Instant lastModified) {
+        Map<String, String> headers = new HashMap<>();
+        headers.put(HttpHeaders.ACCEPT_ENCODING, "gzip");
+        if (!etag.isEmpty()) {
+            headers.put(HttpHeaders.IF_NONE_MATCH, etag);
+        }
+        if (lastModified != null) {
+            ZonedDateTime utcTime = ZonedDateTime.ofInstant(lastModified, ZoneOffset.UTC);
+            headers.put(HttpHeaders.IF_MODIFIED_SINCE, DateTimeFormatter.RFC_1123_DATE_TIME.format(utcTime));
+        }
+        return headers;
     }
 
     public FileResponse getShapeFile(String etag) throws IOException {
@@ -92,12 +116,23 @@ public final class NdwClient implements AutoCloseable {
      * Fetches the remote file, streams it to disk, returns response with http response code and headers
      */
     FileResponse getFile(String name, Map<String, String> headers, File file) throws IOException {
+        return getFile(name, headers, in -> {
+            try (OutputStream out = new FileOutputStream(file)) {
+                in.transferTo(out);
+            }
+        });
+    }
+
+    /**
+     * Fetches the remote file, hands the body to the handler while it is still being received, returns response with
+     * http response code and headers. The handler is only called for a successful response.
+     */
+    FileResponse getFile(String name, Map<String, String> headers, IStreamHandler handler) throws IOException {
         Response<ResponseBody> response = restApi.downloadFileStreaming(name, headers).execute();
         if (response.isSuccessful()) {
             try (ResponseBody body = response.body();
-                 InputStream in = body.byteStream();
-                 OutputStream out = new FileOutputStream(file)) {
-                in.transferTo(out);
+                 InputStream in = body.byteStream()) {
+                handler.handle(in);
             }
         } else {
             if (response.code() > 400) {
@@ -107,4 +142,8 @@ public final class NdwClient implements AutoCloseable {
         return FileResponse.create(response.code(), response.headers().toMultimap());
     }
 
-}
\ No newline at end of file
+    public interface IStreamHandler {
+        void handle(InputStream stream) throws IOException;
+    }
+
+}
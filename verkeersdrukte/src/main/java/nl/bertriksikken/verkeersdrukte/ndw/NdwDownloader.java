@@ -81,6 +81,14 @@ public final class NdwDownloader implements AutoCloseable {
         return file;
     }
 
+    /**
+     * Returns the e-tag of a file in the cache, or an empty string if it is not in the cache.
+     */
+    public String getEtag(String name) {
+        File file = new File(cacheLocation, name);
+        return file.exists() ? cacheIndex.get(name).etag() : "";
+    }
+
     private boolean loadCache() {
         File cacheFile = new File(cacheLocation, "index.yaml");
         try (FileInputStream fis = new FileInputStream(cacheFile)) {
@@ -0,0 +1,109 @@
+package nl.bertriksikken.verkeersdrukte.traffic;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fixed-layout columnar binary encoding of all sites in a {@link TrafficSnapshot}, for bulk machine consumers.
+ * <p>
+ * All numbers are little-endian, strings are an unsigned 16-bit byte length followed by UTF-8. Layout:
+ * <pre>
+ * int32   magic "VDC2"
+ * int64   snapshot version
+ * int32   number of sites (S)
+ * int32   number of lanes (L)
+ * S x string       site id, by site ordinal
+ * S x int64        measurement time, epoch milliseconds, 0 if unknown
+ * S x uint8        number of lanes of the site, the lanes of all sites follow each other in site order
+ * uint16  number of distinct lane ids (N), at most 65535
+ * N x string       lane id
+ * L x uint16       lane id index
+ * L x float32      flow (vehicles/hour), NaN if unknown
+ * L x float32      speed (km/hour), NaN if unknown
+ * </pre>
+ */
+public final class ColumnarFormat {
+
+    public static final String MEDIA_TYPE = "application/vnd.verkeersdrukte.columnar";
+
+    private static final int MAGIC = 0x32434456; // "VDC2", little-endian
+    private static final int MAX_LANE_IDS = 0xFFFF;
+
+    private ColumnarFormat() {
+        // utility class
+    }
+
+    public static byte[] encode(TrafficSnapshot snapshot) {
+        List<String> siteIds = new ArrayList<>();
+        List<Long> times = new ArrayList<>();
+        List<Integer> laneCounts = new ArrayList<>();
+        List<Integer> laneOffsets = new ArrayList<>();
+        try {
+            snapshot.forEach((siteId, measurementMillis, laneOffset, laneCount) -> {
+                siteIds.add(siteId);
+                times.add((measurementMillis != TrafficSnapshot.NO_TIME) ? measurementMillis : 0);
+                laneCounts.add(laneCount);
+                laneOffsets.add(laneOffset);
+            });
+        } catch (IOException e) {
+            // the visitor does no I/O
+            throw new UncheckedIOException(e);
+        }
+        int totalLanes = laneCounts.stream().mapToInt(Integer::intValue).sum();
+
+        Map<String, Integer> laneIdTable = new LinkedHashMap<>();
+        ByteBuffer laneIdIndexes = ByteBuffer.allocate(2 * totalLanes).order(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer flows = ByteBuffer.allocate(4 * totalLanes).order(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer speeds = ByteBuffer.allocate(4 * totalLanes).order(ByteOrder.LITTLE_ENDIAN);
+        for (int site = 0; site < siteIds.size(); site++) {
+            int offset = laneOffsets.get(site);
+            for (int i = 0; i < laneCounts.get(site); i++) {
+                String laneId = snapshot.laneId(offset + i);
+                Integer index = laneIdTable.get(laneId);
+                if (index == null) {
+                    // the number of lane ids is written as uint16 too
+                    if (laneIdTable.size() >= MAX_LANE_IDS) {
+                        throw new IllegalStateException("Too many distinct lane ids");
+                    }
+                    index = laneIdTable.size();
+                    laneIdTable.put(laneId, index);
+                }
+                laneIdIndexes.putShort(index.shortValue());
+                flows.putFloat(snapshot.flow(offset + i));
+                speeds.putFloat(snapshot.speed(offset + i));
+            }
+        }
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(32 + 44 * siteIds.size() + 10 * totalLanes);
+        ByteBuffer header = ByteBuffer.allocate(20).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putLong(snapshot.version()).putInt(siteIds.size()).putInt(totalLanes);
+        bos.writeBytes(header.array());
+        siteIds.forEach(id -> writeString(bos, id));
+        ByteBuffer siteColumns = ByteBuffer.allocate(9 * siteIds.size()).order(ByteOrder.LITTLE_ENDIAN);
+        times.forEach(siteColumns::putLong);
+        laneCounts.forEach(count -> siteColumns.put(count.byteValue()));
+        bos.writeBytes(siteColumns.array());
+        bos.write(laneIdTable.size() & 0xFF);
+        bos.write(laneIdTable.size() >> 8);
+        laneIdTable.keySet().forEach(id -> writeString(bos, id));
+        bos.writeBytes(laneIdIndexes.array());
+        bos.writeBytes(flows.array());
+        bos.writeBytes(speeds.array());
+        return bos.toByteArray();
+    }
+
+    private static void writeString(ByteArrayOutputStream bos, String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        bos.write(bytes.length & 0xFF);
+        bos.write(bytes.length >> 8);
+        bos.writeBytes(bytes);
+    }
+}
@@ -0,0 +1,131 @@
+package nl.bertriksikken.verkeersdrukte.traffic;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingInputStream;
+import com.google.common.io.CountingInputStream;
+import nl.bertriksikken.verkeersdrukte.ndw.FileResponse;
+import nl.bertriksikken.verkeersdrukte.ndw.NdwClient.IStreamHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Objects;
+
+/**
+ * Downloads a file that is published every minute, conditionally on the e-tag and last-modified time of the previous
+ * download, parsing it while it is being received.
+ * <p>
+ * A file that was not modified is not downloaded again. The body is hashed while it is parsed, the result of a file
+ * with the same contents as the previous one is not passed on, so it does not get published again. The Last-Modified
+ * times are used to learn when the next file can be expected.
+ */
+final class ConditionalDownload {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ConditionalDownload.class);
+
+    private final String name;
+    private final IFetcher fetcher;
+    private final PublicationSchedule schedule = new PublicationSchedule();
+    private String etag = "";
+    private Instant lastModified;
+    private HashCode contentHash;
+    private boolean failed;
+
+    ConditionalDownload(String name, IFetcher fetcher) {
+        this.name = name;
+        this.fetcher = Objects.requireNonNull(fetcher);
+    }
+
+    /**
+     * Returns the parsed response if it has new contents, null if it was not modified or the download failed.
+     */
+    <T> T fetch(IParser<T> parser) {
+        failed = false;
+        try {
+            Body<T> body = new Body<>(parser);
+            FileResponse response = fetcher.fetch(etag, lastModified, body);
+            return switch (response.getCode()) {
+                case 200 -> update(response, body);
+                case 304 -> {
+                    schedule.notModified(Instant.now());
+                    LOG.info("{} not modified (etag {})", name, etag);
+                    yield null;
+                }
+                default -> throw new IOException("Unexpected response: " + response);
+            };
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Download {} failed", name, e);
+            failed = true;
+            return null;
+        }
+    }
+
+    private <T> T update(FileResponse response, Body<T> body) {
+        etag = response.getEtag();
+        lastModified = response.getLastModified();
+        schedule.published(lastModified, Instant.now());
+        Duration age = Duration.between(lastModified, Instant.now());
+        LOG.info("Got {}, {} bytes, data age {}", name, body.size, age);
+
+        if (body.hash.equals(contentHash)) {
+            LOG.info("{} has identical contents, skipping", name);
+            return null;
+        }
+        contentHash = body.hash;
+        return body.result;
+    }
+
+    /**
+     * Returns when to download next: when the next file is expected, soon if it is late, a bit later if the download
+     * failed.
+     */
+    Instant nextUpdate() {
+        Instant now = Instant.now();
+        if (failed) {
+            return now.plus(PublicationSchedule.RETRY_INTERVAL);
+        }
+        return schedule.nextPoll(now);
+    }
+
+    interface IFetcher {
+        FileResponse fetch(String etag, Instant lastModified, IStreamHandler handler) throws IOException;
+    }
+
+    interface IParser<T> {
+        T parse(InputStream stream) throws IOException;
+    }
+
+    // parses the body while counting and hashing it
+    private static final class Body<T> implements IStreamHandler {
+        private final IParser<T> parser;
+        private T result;
+        private HashCode hash;
+        private long size;
+
+        Body(IParser<T> parser) {
+            this.parser = parser;
+        }
+
+        @Override
+        public void handle(InputStream stream) throws IOException {
+            CountingInputStream counting = new CountingInputStream(stream);
+            HashingInputStream hashing = new HashingInputStream(Hashing.murmur3_128(), counting);
+            // the parser may close the stream, or stop before the end, the hash needs all of it
+            result = parser.parse(new FilterInputStream(hashing) {
+                @Override
+                public void close() {
+                    // keep open
+                }
+            });
+            hashing.transferTo(OutputStream.nullOutputStream());
+            hash = hashing.hash();
+            size = counting.getCount();
+        }
+    }
+}
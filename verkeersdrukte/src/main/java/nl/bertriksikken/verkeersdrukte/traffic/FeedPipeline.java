@@ -0,0 +1,161 @@
+package nl.bertriksikken.verkeersdrukte.traffic;
+
+import com.google.common.base.Stopwatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Processes the items of one data feed in a chain of stages, like fetch, parse and notify.
+ * <p>
+ * Each stage runs on its own thread with a bounded queue in front of it, so stages overlap: a stage can start on the
+ * next item while the later stages are still busy with the previous one, and a full queue holds up the stage before
+ * it. A stage returns null to stop processing an item, for example when it failed, an exception thrown by a stage also
+ * stops only that item. The latency of each stage is logged for every item.
+ */
+final class FeedPipeline<T> implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FeedPipeline.class);
+
+    private final String name;
+    private final List<StageRunner> runners = new ArrayList<>();
+
+    private FeedPipeline(String name, Thread.Builder threadBuilder, int queueSize, List<NamedStage> stages) {
+        this.name = name;
+        StageRunner next = null;
+        for (int i = stages.size() - 1; i >= 0; i--) {
+            next = new StageRunner(stages.get(i), new ArrayBlockingQueue<>(queueSize), next);
+            runners.addFirst(next);
+        }
+        for (StageRunner runner : runners) {
+            runner.thread = threadBuilder.name(name + "-" + runner.stage.name()).unstarted(runner::run);
+        }
+    }
+
+    static <T> Builder<T, T> builder(String name, Thread.Builder threadBuilder, int queueSize) {
+        return new Builder<>(name, threadBuilder, queueSize, List.of());
+    }
+
+    void start() {
+        runners.forEach(runner -> runner.thread.start());
+    }
+
+    /**
+     * Offers an item to the first stage, returns false if that stage still has too much work queued.
+     */
+    boolean offer(T item) {
+        return runners.getFirst().queue.offer(item);
+    }
+
+    /**
+     * Returns whether all stages are still running.
+     */
+    boolean isRunning() {
+        return runners.stream().allMatch(runner -> runner.thread.isAlive());
+    }
+
+    @Override
+    public void close() {
+        runners.forEach(runner -> runner.thread.interrupt());
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    interface IStage<I, O> {
+        O process(I input) throws IOException;
+    }
+
+    interface ISink<I> {
+        void accept(I input) throws IOException;
+    }
+
+    private record NamedStage(String name, IStage<Object, Object> stage) {
+    }
+
+    private final class StageRunner {
+        private final NamedStage stage;
+        private final BlockingQueue<Object> queue;
+        private final StageRunner next;
+        private Thread thread;
+
+        StageRunner(NamedStage stage, BlockingQueue<Object> queue, StageRunner next) {
+            this.stage = stage;
+            this.queue = queue;
+            this.next = next;
+        }
+
+        private void run() {
+            try {
+                while (true) {
+                    Object item = queue.take();
+                    Stopwatch sw = Stopwatch.createStarted();
+                    Object result;
+                    try {
+                        result = stage.stage().process(item);
+                    } catch (IOException e) {
+                        LOG.warn("{} {} failed: {}", name, stage.name(), e.getMessage());
+                        result = null;
+                    } catch (RuntimeException e) {
+                        // a bug in one item should not stop the stage, that would block the stages before it forever
+                        LOG.warn("{} {} failed", name, stage.name(), e);
+                        result = null;
+                    }
+                    LOG.info("{} {} took {}", name, stage.name(), sw.elapsed());
+                    if (result != null && next != null) {
+                        next.queue.put(result);
+                    }
+                }
+            } catch (InterruptedException e) {
+                LOG.info("{} {} stopped", name, stage.name());
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Builds a pipeline for items of type S, where the last stage added produces items of type T.
+     */
+    static final class Builder<S, T> {
+        private final String name;
+        private final Thread.Builder threadBuilder;
+        private final int queueSize;
+        private final List<NamedStage> stages;
+
+        private Builder(String name, Thread.Builder threadBuilder, int queueSize, List<NamedStage> stages) {
+            this.name = name;
+            this.threadBuilder = threadBuilder;
+            this.queueSize = queueSize;
+            this.stages = stages;
+        }
+
+        @SuppressWarnings("unchecked")
+        <R> Builder<S, R> then(String stageName, IStage<? super T, ? extends R> stage) {
+            List<NamedStage> list = new ArrayList<>(stages);
+            list.add(new NamedStage(stageName, (IStage<Object, Object>) stage));
+            return new Builder<>(name, threadBuilder, queueSize, list);
+        }
+
+        /**
+         * Returns the pipeline, ending with a stage that consumes the items.
+         */
+        FeedPipeline<S> build(String stageName, ISink<? super T> sink) {
+            IStage<T, Object> stage = item -> {
+                sink.accept(item);
+                return null;
+            };
+            return then(stageName, stage).pipeline();
+        }
+
+        private FeedPipeline<S> pipeline() {
+            return new FeedPipeline<>(name, threadBuilder, queueSize, stages);
+        }
+    }
+}
@@ -1,7 +1,13 @@
 package nl.bertriksikken.verkeersdrukte.traffic;
 
+import nl.bertriksikken.datex2v3.VmsController;
 import nl.bertriksikken.datex2v3.VmsPayload;
 import nl.bertriksikken.geojson.FeatureCollection;
+import nl.bertriksikken.spatial.BoundingBox;
+import nl.bertriksikken.spatial.GridIndex.Neighbour;
+
+import java.time.Instant;
+import java.util.List;
 
 public interface ITrafficHandler {
 
@@ -9,16 +15,53 @@ public interface ITrafficHandler {
 
     SiteMeasurement getDynamicData(String location);
 
+    /**
+     * Returns the recent measurements of a location with a measurement time after the specified time, oldest first.
+     */
+    List<SiteMeasurement> getDynamicHistory(String location, Instant after);
+
+    /**
+     * Returns the latest published snapshot of all measurements.
+     */
+    TrafficSnapshot getSnapshot();
+
     FeatureCollection getStaticData();
 
     FeatureCollection.Feature getStaticData(String location);
 
+    /**
+     * Returns the features inside a bounding box.
+     */
+    List<FeatureCollection.Feature> getStaticData(BoundingBox bbox);
+
+    /**
+     * Returns the k sites nearest to a coordinate, nearest first.
+     */
+    List<Neighbour<FeatureCollection.Feature>> findNearestSites(double lat, double lon, int k);
+
     VmsPayload getVmsPayload();
 
-    void subscribe(String clientId, INotifyData callback);
+    /**
+     * Returns the k DRIPs nearest to a coordinate, nearest first.
+     */
+    List<Neighbour<VmsController>> findNearestDrips(double lat, double lon, int k);
+
+    /**
+     * Returns the DRIPs inside a bounding box.
+     */
+    List<VmsController> getDrips(BoundingBox bbox);
+
+    /**
+     * Subscribes to updates of a topic, for one location or for any location if the location is null.
+     */
+    void subscribe(String clientId, ETopic topic, String location, INotifyData callback);
 
     void unsubscribe(String clientId);
 
+    enum ETopic {
+        TRAFFIC_SPEED, VMS
+    }
+
     interface INotifyData {
         void notifyUpdate();
     }
@@ -1,27 +1,125 @@
 package nl.bertriksikken.verkeersdrukte.traffic;
 
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
-
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 import java.time.Duration;
+import java.time.Instant;
+
+import static nl.bertriksikken.verkeersdrukte.traffic.SnapshotFile.readString;
+import static nl.bertriksikken.verkeersdrukte.traffic.SnapshotFile.writeString;
 
+/**
+ * Keeps the latest measurement per site, as an immutable {@link TrafficSnapshot}.
+ * <p>
+ * An ingest cycle fills a builder with {@link #update()} and makes it visible with {@link #publish}, so readers
+ * always see a complete cycle. There is a single writer, the ingest thread.
+ */
 public final class MeasurementCache {
 
-    private final Cache<String, SiteMeasurement> cache;
+    private static final int MAGIC = 0x56444d43; // "VDMC"
+    private static final int VERSION = 1;
+
+    private final long expiryMillis;
+    private volatile TrafficSnapshot snapshot;
 
     MeasurementCache(Duration expiryDuration) {
-        cache = CacheBuilder.newBuilder().expireAfterWrite(expiryDuration).build();
+        this.expiryMillis = expiryDuration.toMillis();
+        snapshot = TrafficSnapshot.empty(expiryMillis);
+    }
+
+    /**
+     * Returns a builder for the next snapshot, starting with the contents of the current snapshot.
+     */
+    TrafficSnapshot.Builder update() {
+        return snapshot.toBuilder();
+    }
+
+    void publish(TrafficSnapshot.Builder builder) {
+        snapshot = builder.build();
     }
 
+    public TrafficSnapshot snapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Puts a single measurement, publishing a new snapshot.
+     */
     public void put(String location, SiteMeasurement measurement) {
-        cache.put(location, measurement);
+        TrafficSnapshot.Builder builder = update();
+        builder.put(location, measurement);
+        publish(builder);
     }
 
     public SiteMeasurement get(String location) {
-        return cache.getIfPresent(location);
+        return snapshot.getMeasurement(location);
     }
 
+    /**
+     * Returns the number of sites with a measurement that has not expired.
+     */
     public long size() {
-        return cache.size();
+        return snapshot.size();
+    }
+
+    /**
+     * Saves the current snapshot, see {@link SnapshotFile}.
+     */
+    void save(File file) throws IOException {
+        TrafficSnapshot current = snapshot;
+        // one point in time for both, so the count matches the number of entries written
+        long now = System.currentTimeMillis();
+        SnapshotFile.write(file, MAGIC, VERSION, dos -> {
+            dos.writeInt(current.size(now));
+            current.forEach((siteId, measurementMillis, laneOffset, laneCount) -> {
+                writeString(dos, siteId);
+                dos.writeLong(measurementMillis);
+                dos.writeInt(laneCount);
+                for (int lane = laneOffset; lane < laneOffset + laneCount; lane++) {
+                    writeString(dos, current.laneId(lane));
+                    dos.writeDouble(current.flow(lane));
+                    dos.writeDouble(current.speed(lane));
+                }
+            }, now);
+        });
+    }
+
+    /**
+     * Restores measurements from a snapshot, skipping the ones that expired relative to their measurement time.
+     *
+     * @return the number of restored measurements
+     */
+    int restore(File file, Instant now) throws IOException {
+        TrafficSnapshot.Builder builder = update();
+        int count = 0;
+        try {
+            ByteBuffer buffer = SnapshotFile.map(file, MAGIC, VERSION);
+            int numEntries = buffer.getInt();
+            for (int i = 0; i < numEntries; i++) {
+                String location = readString(buffer);
+                long millis = buffer.getLong();
+                int numLanes = buffer.getInt();
+                String[] ids = new String[numLanes];
+                double[] laneFlows = new double[numLanes];
+                double[] laneSpeeds = new double[numLanes];
+                for (int j = 0; j < numLanes; j++) {
+                    ids[j] = readString(buffer).intern();
+                    laneFlows[j] = buffer.getDouble();
+                    laneSpeeds[j] = buffer.getDouble();
+                }
+                boolean expired = (millis == TrafficSnapshot.NO_TIME) || (millis + expiryMillis) < now.toEpochMilli();
+                if (!expired && !builder.contains(location)) {
+                    // expire relative to the measurement time, not the time of the restart
+                    builder.put(location, millis, millis, numLanes, ids, laneFlows, laneSpeeds);
+                    count++;
+                }
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException | NegativeArraySizeException e) {
+            throw new IOException("Corrupt measurement snapshot " + file, e);
+        }
+        publish(builder);
+        return count;
     }
 }
@@ -0,0 +1,131 @@
+package nl.bertriksikken.verkeersdrukte.traffic;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the last few measurements of each site, so a client can catch up on what it missed.
+ * <p>
+ * Each site has a ring buffer of primitive arrays, with its lane ids stored once. If the lanes of a site change, its
+ * history starts over.
+ */
+final class MeasurementHistory {
+
+    private final int depth;
+    private final Map<String, Row> rows = new ConcurrentHashMap<>();
+
+    MeasurementHistory(int depth) {
+        this.depth = depth;
+    }
+
+    /**
+     * Records the measurements of the sites in a snapshot that got a new measurement, all sites if measured is null.
+     * <p>
+     * The history of a site without a measurement in the snapshot (because it expired) is dropped.
+     */
+    void record(TrafficSnapshot snapshot, Set<String> measured) {
+        if (measured != null && measured.isEmpty()) {
+            return;
+        }
+        Set<String> present = new HashSet<>();
+        try {
+            snapshot.forEach((siteId, measurementMillis, laneOffset, laneCount) -> {
+                if (measured == null || measured.contains(siteId)) {
+                    present.add(siteId);
+                }
+                if (measurementMillis != TrafficSnapshot.NO_TIME && (measured == null || measured.contains(siteId))) {
+                    Row row = rows.get(siteId);
+                    if (row == null || !row.hasLanes(snapshot, laneOffset, laneCount)) {
+                        row = new Row(snapshot, laneOffset, laneCount, depth);
+                        rows.put(siteId, row);
+                    }
+                    row.add(snapshot, measurementMillis, laneOffset);
+                }
+            });
+        } catch (IOException e) {
+            // the visitor does not do any I/O
+            throw new UncheckedIOException(e);
+        }
+        if (measured == null) {
+            rows.keySet().retainAll(present);
+        } else {
+            measured.stream().filter(siteId -> !present.contains(siteId)).forEach(rows::remove);
+        }
+    }
+
+    /**
+     * Returns the recorded measurements of a site with a measurement time after the specified time, oldest first.
+     */
+    List<SiteMeasurement> getMeasurements(String siteId, Instant after) {
+        Row row = rows.get(siteId);
+        return (row != null) ? row.since(after.toEpochMilli()) : List.of();
+    }
+
+    private static final class Row {
+        private final String[] laneIds;
+        private final long[] times;
+        // flow and speed per lane, per slot
+        private final float[] values;
+        private int head;
+        private int count;
+
+        Row(TrafficSnapshot snapshot, int laneOffset, int laneCount, int depth) {
+            laneIds = new String[laneCount];
+            for (int i = 0; i < laneCount; i++) {
+                laneIds[i] = snapshot.laneId(laneOffset + i);
+            }
+            times = new long[depth];
+            values = new float[depth * laneCount * 2];
+        }
+
+        boolean hasLanes(TrafficSnapshot snapshot, int laneOffset, int laneCount) {
+            if (laneCount != laneIds.length) {
+                return false;
+            }
+            for (int i = 0; i < laneCount; i++) {
+                if (!laneIds[i].equals(snapshot.laneId(laneOffset + i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        synchronized void add(TrafficSnapshot snapshot, long measurementMillis, int laneOffset) {
+            if (count > 0 && times[(head + times.length - 1) % times.length] == measurementMillis) {
+                return;
+            }
+            times[head] = measurementMillis;
+            int base = head * laneIds.length * 2;
+            for (int i = 0; i < laneIds.length; i++) {
+                values[base + 2 * i] = snapshot.flow(laneOffset + i);
+                values[base + 2 * i + 1] = snapshot.speed(laneOffset + i);
+            }
+            head = (head + 1) % times.length;
+            count = Math.min(count + 1, times.length);
+        }
+
+        synchronized List<SiteMeasurement> since(long afterMillis) {
+            List<SiteMeasurement> measurements = new ArrayList<>();
+            for (int i = count; i > 0; i--) {
+                int slot = (head + times.length - i) % times.length;
+                if (times[slot] > afterMillis) {
+                    SiteMeasurement measurement = new SiteMeasurement(Instant.ofEpochMilli(times[slot]));
+                    int base = slot * laneIds.length * 2;
+                    for (int lane = 0; lane < laneIds.length; lane++) {
+                        measurement.addLaneMeasurement(laneIds[lane], values[base + 2 * lane],
+                                values[base + 2 * lane + 1]);
+                    }
+                    measurements.add(measurement);
+                }
+            }
+            return measurements;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package nl.bertriksikken.verkeersdrukte.traffic;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import nl.bertriksikken.datex2.IMeasuredDataDecoder;
+import nl.bertriksikken.datex2.IMeasuredValueSink;
+import nl.bertriksikken.datex2.SiteMeasurementsChunker;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/**
+ * Decodes a MeasuredDataPublication on multiple cores.
+ * <p>
+ * The calling thread slices the publication into chunks of siteMeasurements records, a bounded pool of workers
+ * decodes the chunks, each into its own sink.
+ */
+final class ParallelDecoder implements AutoCloseable {
+
+    private static final int RECORDS_PER_CHUNK = 250;
+
+    private final IMeasuredDataDecoder decoder;
+    private final int parallelism;
+    private final ExecutorService executor;
+    private final SiteMeasurementsChunker chunker = new SiteMeasurementsChunker(RECORDS_PER_CHUNK);
+
+    ParallelDecoder(IMeasuredDataDecoder decoder, int parallelism) {
+        this.decoder = Objects.requireNonNull(decoder);
+        this.parallelism = parallelism;
+        this.executor = Executors.newFixedThreadPool(parallelism,
+                new ThreadFactoryBuilder().setNameFormat("decoder-%d").setDaemon(true).build());
+    }
+
+    /**
+     * Decodes the stream, returns when all chunks have been processed.
+     *
+     * @param sinkSupplier supplies a new sink for every chunk
+     */
+    void decode(InputStream stream, Supplier<IMeasuredValueSink> sinkSupplier) throws IOException {
+        // limit the number of chunks in flight, so the reader does not run too far ahead of the workers
+        Semaphore permits = new Semaphore(2 * parallelism);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            chunker.split(stream, chunk -> {
+                acquire(permits);
+                // stop reading as soon as a worker has failed, instead of chunking the rest of the input first
+                checkCompleted(futures);
+                futures.add(executor.submit(() -> {
+                    try {
+                        decoder.decode(new ByteArrayInputStream(chunk), sinkSupplier.get());
+                        return null;
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            });
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Decode interrupted");
+        } catch (ExecutionException e) {
+            throw new IOException("Decode failed", e.getCause());
+        } finally {
+            futures.forEach(future -> future.cancel(true));
+        }
+    }
+
+    private static void checkCompleted(List<Future<?>> futures) throws IOException {
+        Iterator<Future<?>> iterator = futures.iterator();
+        while (iterator.hasNext()) {
+            Future<?> future = iterator.next();
+            if (future.isDone()) {
+                try {
+                    Futures.getDone(future);
+                } catch (ExecutionException e) {
+                    throw new IOException("Decode failed", e.getCause());
+                }
+                iterator.remove();
+            }
+        }
+    }
+
+    private static void acquire(Semaphore permits) throws InterruptedIOException {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Decode interrupted");
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+}
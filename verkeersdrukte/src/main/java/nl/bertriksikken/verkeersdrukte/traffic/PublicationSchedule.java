@@ -0,0 +1,123 @@
+package nl.bertriksikken.verkeersdrukte.traffic;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Predicts when a regularly published file becomes available, from the Last-Modified times of earlier downloads.
+ * <p>
+ * The interval is the median of the recent intervals between Last-Modified times. The delay between the Last-Modified
+ * time and the moment the file can be downloaded is lowered by a small step after each publication that was there at
+ * the first try, so polling keeps creeping earlier. Once a poll comes too early, the delay goes back up to the time of
+ * that poll. If the new file is not there yet at the predicted time, it is probed at a short interval (with cheap
+ * conditional requests) for up to half an interval, after which the next one is expected.
+ */
+final class PublicationSchedule {
+
+    static final Duration DEFAULT_INTERVAL = Duration.ofSeconds(60);
+    static final Duration PROBE_INTERVAL = Duration.ofSeconds(3);
+    static final Duration RETRY_INTERVAL = Duration.ofSeconds(15);
+    private static final Duration DELAY_STEP = Duration.ofSeconds(1);
+    private static final int MAX_SAMPLES = 15;
+
+    private final Deque<Instant> publications = new ArrayDeque<>();
+    private Duration delay;
+    // time of the last poll that did not find a new publication, null if the last poll did
+    private Instant lastMiss;
+
+    /**
+     * Records a publication that was downloaded at the specified time.
+     */
+    void published(Instant lastModified, Instant received) {
+        Instant last = publications.peekLast();
+        if (last != null && !lastModified.isAfter(last)) {
+            return;
+        }
+        add(publications, lastModified);
+        Duration observed = Duration.between(lastModified, received);
+        Duration missed = (lastMiss != null) ? Duration.between(lastModified, lastMiss) : Duration.ZERO;
+        lastMiss = null;
+        if (delay == null) {
+            delay = observed.minus(DELAY_STEP);
+        } else if (missed.isPositive()) {
+            // it was not there yet at the missed poll, so it is no use polling before that
+            delay = (missed.compareTo(delay) > 0) ? missed : delay;
+        } else {
+            // it was there at the first try, so it may have been there earlier
+            delay = ((observed.compareTo(delay) < 0) ? observed : delay).minus(DELAY_STEP);
+        }
+        if (delay.isNegative()) {
+            delay = Duration.ZERO;
+        }
+    }
+
+    /**
+     * Records a poll at the specified time that did not find a new publication.
+     */
+    void notModified(Instant now) {
+        lastMiss = now;
+    }
+
+    /**
+     * Returns the median interval between publications.
+     */
+    Duration interval() {
+        if (publications.size() < 2) {
+            return DEFAULT_INTERVAL;
+        }
+        List<Duration> intervals = new ArrayList<>();
+        Instant previous = null;
+        for (Instant publication : publications) {
+            if (previous != null) {
+                intervals.add(Duration.between(previous, publication));
+            }
+            previous = publication;
+        }
+        Collections.sort(intervals);
+        Duration median = intervals.get(intervals.size() / 2);
+        return (median.compareTo(PROBE_INTERVAL) < 0) ? PROBE_INTERVAL : median;
+    }
+
+    /**
+     * Returns the delay after the Last-Modified time to try to download the next publication.
+     */
+    Duration delay() {
+        if (delay == null) {
+            return Duration.ZERO;
+        }
+        Duration maxDelay = interval().dividedBy(2);
+        return (delay.compareTo(maxDelay) > 0) ? maxDelay : delay;
+    }
+
+    /**
+     * Returns when to poll next: at the predicted time of the next publication, or after a short probe interval if
+     * that publication is late.
+     */
+    Instant nextPoll(Instant now) {
+        Instant last = publications.peekLast();
+        if (last == null) {
+            return now.plus(DEFAULT_INTERVAL);
+        }
+        Duration interval = interval();
+        Instant expected = last.plus(interval).plus(delay());
+        // skip publications that were missed, instead of probing forever
+        Duration overdue = Duration.between(expected.plus(interval.dividedBy(2)), now);
+        if (overdue.isPositive()) {
+            long missed = overdue.toMillis() / interval.toMillis() + 1;
+            expected = expected.plus(interval.multipliedBy(missed));
+        }
+        return expected.isAfter(now) ? expected : now.plus(PROBE_INTERVAL);
+    }
+
+    private static <T> void add(Deque<T> samples, T sample) {
+        samples.addLast(sample);
+        if (samples.size() > MAX_SAMPLES) {
+            samples.removeFirst();
+        }
+    }
+}
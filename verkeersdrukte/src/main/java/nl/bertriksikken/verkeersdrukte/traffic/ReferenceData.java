@@ -0,0 +1,155 @@
+package nl.bertriksikken.verkeersdrukte.traffic;
+
+import nl.bertriksikken.geojson.FeatureCollection;
+import nl.bertriksikken.geojson.FeatureCollection.Feature;
+import nl.bertriksikken.geojson.FeatureCollection.PointGeometry;
+import nl.bertriksikken.spatial.GridIndex;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static nl.bertriksikken.verkeersdrukte.traffic.SnapshotFile.readString;
+import static nl.bertriksikken.verkeersdrukte.traffic.SnapshotFile.writeString;
+
+/**
+ * The compiled reference data (shapefile features and MST lane plans), with the e-tags of the files it was built from.
+ * The features are also indexed by location id and by position, the indexes are swapped together with the features.
+ * <p>
+ * Can be saved to and loaded from a compact binary snapshot file, so the service does not have to parse the shapefile
+ * and MST again on startup.
+ */
+record ReferenceData(String shapeFileEtag, String mstEtag, FeatureCollection features,
+                     Map<String, Feature> featureIndex, GridIndex<Feature> spatialIndex,
+                     Map<String, SiteLanePlan> lanePlans) {
+
+    static final ReferenceData EMPTY = new ReferenceData("", "", new FeatureCollection(), Map.of());
+
+    private static final int MAGIC = 0x56445244; // "VDRD"
+    private static final int VERSION = 1;
+    private static final double GRID_CELL_SIZE = 0.05; // degrees
+
+    ReferenceData {
+        featureIndex = Map.copyOf(featureIndex);
+        lanePlans = Map.copyOf(lanePlans);
+    }
+
+    ReferenceData(String shapeFileEtag, String mstEtag, FeatureCollection features,
+                  Map<String, SiteLanePlan> lanePlans) {
+        this(shapeFileEtag, mstEtag, features, indexFeatures(features), indexPoints(features), lanePlans);
+    }
+
+    // indexes features by their "dgl_loc" property, the first feature wins in case of duplicates
+    private static Map<String, Feature> indexFeatures(FeatureCollection features) {
+        Map<String, Feature> index = new HashMap<>();
+        for (Feature feature : features.getFeatures()) {
+            if (feature.getProperties().get("dgl_loc") instanceof String location) {
+                index.putIfAbsent(location, feature);
+            }
+        }
+        return index;
+    }
+
+    private static GridIndex<Feature> indexPoints(FeatureCollection features) {
+        List<Feature> points = features.getFeatures().stream()
+                .filter(f -> f.getGeometry() instanceof PointGeometry).toList();
+        return new GridIndex<>(points, f -> ((PointGeometry) f.getGeometry()).getLatitude(),
+                f -> ((PointGeometry) f.getGeometry()).getLongitude(), GRID_CELL_SIZE);
+    }
+
+    /**
+     * Checks if this reference data was built from the files with the specified e-tags.
+     */
+    boolean isBuiltFrom(String shapeFileEtag, String mstEtag) {
+        return !shapeFileEtag.isEmpty() && !mstEtag.isEmpty()
+                && this.shapeFileEtag.equals(shapeFileEtag) && this.mstEtag.equals(mstEtag);
+    }
+
+    /**
+     * Saves a snapshot, see {@link SnapshotFile}.
+     */
+    void save(File file) throws IOException {
+        SnapshotFile.write(file, MAGIC, VERSION, dos -> {
+            writeString(dos, shapeFileEtag);
+            writeString(dos, mstEtag);
+
+            // point features with their DBF properties
+            var points = features.getFeatures().stream().filter(f -> f.getGeometry() instanceof PointGeometry).toList();
+            dos.writeInt(points.size());
+            for (Feature feature : points) {
+                PointGeometry geometry = (PointGeometry) feature.getGeometry();
+                dos.writeDouble(geometry.getLatitude());
+                dos.writeDouble(geometry.getLongitude());
+                Map<String, Object> properties = feature.getProperties();
+                dos.writeInt(properties.size());
+                for (Map.Entry<String, Object> entry : properties.entrySet()) {
+                    writeString(dos, entry.getKey());
+                    writeString(dos, String.valueOf(entry.getValue()));
+                }
+            }
+
+            // lane plans
+            dos.writeInt(lanePlans.size());
+            for (Map.Entry<String, SiteLanePlan> entry : lanePlans.entrySet()) {
+                SiteLanePlan plan = entry.getValue();
+                writeString(dos, entry.getKey());
+                dos.writeInt(plan.laneCount());
+                for (int slot = 0; slot < plan.laneCount(); slot++) {
+                    writeString(dos, plan.laneId(slot));
+                }
+                byte[] slots = plan.slots();
+                dos.writeInt(slots.length);
+                dos.write(slots);
+            }
+        });
+    }
+
+    /**
+     * Loads a snapshot, see {@link SnapshotFile}.
+     */
+    static ReferenceData load(File file) throws IOException {
+        try {
+            return read(SnapshotFile.map(file, MAGIC, VERSION));
+        } catch (BufferUnderflowException | IllegalArgumentException | NegativeArraySizeException e) {
+            throw new IOException("Corrupt reference data snapshot " + file, e);
+        }
+    }
+
+    private static ReferenceData read(ByteBuffer buffer) {
+        String shapeFileEtag = readString(buffer);
+        String mstEtag = readString(buffer);
+
+        FeatureCollection features = new FeatureCollection();
+        int numFeatures = buffer.getInt();
+        for (int i = 0; i < numFeatures; i++) {
+            double latitude = buffer.getDouble();
+            double longitude = buffer.getDouble();
+            Feature feature = new Feature(new PointGeometry(latitude, longitude));
+            int numProperties = buffer.getInt();
+            for (int j = 0; j < numProperties; j++) {
+                String name = readString(buffer);
+                feature.addProperty(name, readString(buffer));
+            }
+            features.add(feature);
+        }
+
+        Map<String, SiteLanePlan> lanePlans = new HashMap<>();
+        int numPlans = buffer.getInt();
+        for (int i = 0; i < numPlans; i++) {
+            String siteId = readString(buffer);
+            String[] laneIds = new String[buffer.getInt()];
+            for (int slot = 0; slot < laneIds.length; slot++) {
+                laneIds[slot] = readString(buffer);
+            }
+            byte[] slots = new byte[buffer.getInt()];
+            buffer.get(slots);
+            lanePlans.put(siteId, new SiteLanePlan(laneIds, slots));
+        }
+        return new ReferenceData(shapeFileEtag, mstEtag, features, lanePlans);
+    }
+
+}
@@ -38,11 +38,18 @@ public final class ShapeFileDownloader {
      */
     public boolean download() throws IOException {
         File file = downloader.fetchFile(INdwApi.TRAFFIC_SPEED_SHAPEFILE);
+        read(file);
+        return true;
+    }
 
+    /**
+     * Reads the shape file from a previously downloaded zip file.
+     */
+    void read(File zipFile) throws IOException {
         // unzip
         folder.mkdirs();
         deleteFiles(folder);
-        unzip(file, folder);
+        unzip(zipFile, folder);
 
         // read shape file
         try (FileInputStream shpStream = new FileInputStream(new File(folder, "Telpunten_WGS84.shp"))) {
@@ -50,7 +57,6 @@ public final class ShapeFileDownloader {
                 shapeFile = ShapeFile.read(shpStream, dbfStream);
             }
         }
-        return true;
     }
 
     private void deleteFiles(File folder) {
@@ -0,0 +1,89 @@
+package nl.bertriksikken.verkeersdrukte.traffic;
+
+import nl.bertriksikken.datex2.MeasurementSiteRecord;
+import nl.bertriksikken.datex2.MeasurementSiteRecord.MeasurementSpecificCharacteristicsElement;
+import nl.bertriksikken.datex2.MeasurementSiteRecord.SpecificVehicleCharacteristics;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeSet;
+
+/**
+ * Compiled form of a measurement site record, maps each measured value index directly to a lane slot.
+ * <p>
+ * Only the "anyVehicle" characteristics get a lane slot, lane slots are numbered in the (sorted) order of the lane ids.
+ */
+final class SiteLanePlan {
+
+    /**
+     * Maximum number of lanes, so the lanes of a site fit in a bit mask.
+     */
+    static final int MAX_LANES = Long.SIZE;
+    /**
+     * Slot for a measured value index that is not in the MST.
+     */
+    static final int UNKNOWN = -1;
+    /**
+     * Slot for a measured value that is not used.
+     */
+    static final int IGNORE = -2;
+
+    private final String[] laneIds;
+    private final byte[] slots;
+
+    SiteLanePlan(String[] laneIds, byte[] slots) {
+        this.laneIds = laneIds.clone();
+        this.slots = slots.clone();
+    }
+
+    static SiteLanePlan compile(MeasurementSiteRecord record) {
+        Map<Integer, MeasurementSpecificCharacteristicsElement> characteristics = record.getCharacteristics();
+
+        // collect the distinct lanes with an "anyVehicle" measurement, keeping the first ones in sorted order
+        TreeSet<String> lanes = new TreeSet<>();
+        characteristics.values().stream().filter(SiteLanePlan::isAnyVehicle)
+                .map(MeasurementSpecificCharacteristicsElement::specificLane)
+                .forEach(lanes::add);
+        String[] laneIds = lanes.stream().limit(MAX_LANES).toArray(String[]::new);
+
+        // map each index to the slot of its lane
+        int maxIndex = characteristics.keySet().stream().mapToInt(Integer::intValue).max().orElse(0);
+        byte[] slots = new byte[maxIndex + 1];
+        Arrays.fill(slots, (byte) UNKNOWN);
+        characteristics.forEach((index, element) -> {
+            if (index >= 0) {
+                // lanes beyond the maximum are not found
+                int slot = isAnyVehicle(element) ? Arrays.binarySearch(laneIds, element.specificLane()) : IGNORE;
+                slots[index] = (byte) ((slot >= 0) ? slot : IGNORE);
+            }
+        });
+        return new SiteLanePlan(laneIds, slots);
+    }
+
+    private static boolean isAnyVehicle(MeasurementSpecificCharacteristicsElement element) {
+        String vehicleType = Optional.ofNullable(element.specificVehicleCharacteristics())
+                .map(SpecificVehicleCharacteristics::vehicleType).orElse("");
+        return (element.specificLane() != null) && vehicleType.equals("anyVehicle");
+    }
+
+    int laneCount() {
+        return laneIds.length;
+    }
+
+    String laneId(int slot) {
+        return laneIds[slot];
+    }
+
+    byte[] slots() {
+        return slots.clone();
+    }
+
+    /**
+     * Returns the lane slot for a measured value index, or {@link #UNKNOWN} or {@link #IGNORE}.
+     */
+    int slot(int index) {
+        return (index >= 0 && index < slots.length) ? slots[index] : UNKNOWN;
+    }
+
+}
@@ -0,0 +1,94 @@
+package nl.bertriksikken.verkeersdrukte.traffic;
+
+import nl.bertriksikken.datex2.IMeasuredValueSink;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Processes NDW measurements, relating them to the MST, finding the "anyVehicle" measurements per lane.
+ * <p>
+ * Receives the measured values of one site at a time, puts the resulting lanes in the snapshot builder. The MST is
+ * used in its compiled form, so each measured value is a single array lookup in the lane plan of its site.
+ */
+final class SiteMeasurementCollector implements IMeasuredValueSink {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SiteMeasurementCollector.class);
+
+    private final Map<String, SiteLanePlan> lanePlans;
+    private final TrafficSnapshot.Builder builder;
+
+    // flow/speed per lane slot, with a bit mask of the slots that were set
+    private final double[] flows = new double[SiteLanePlan.MAX_LANES];
+    private final double[] speeds = new double[SiteLanePlan.MAX_LANES];
+    private long flowMask;
+    private long speedMask;
+    // compacted lanes, as stored in the cache
+    private final String[] laneIds = new String[SiteLanePlan.MAX_LANES];
+    private final double[] laneFlows = new double[SiteLanePlan.MAX_LANES];
+    private final double[] laneSpeeds = new double[SiteLanePlan.MAX_LANES];
+    private String siteId = "";
+    private Instant dateTime;
+    private SiteLanePlan plan;
+
+    SiteMeasurementCollector(Map<String, SiteLanePlan> lanePlans, TrafficSnapshot.Builder builder) {
+        this.lanePlans = Objects.requireNonNull(lanePlans);
+        this.builder = Objects.requireNonNull(builder);
+    }
+
+    @Override
+    public void startSite(String siteId, Instant measurementTime) {
+        this.siteId = siteId;
+        this.dateTime = measurementTime;
+        plan = lanePlans.get(siteId);
+        flowMask = 0;
+        speedMask = 0;
+    }
+
+    @Override
+    public void measuredValue(int index, EValueType type, double value, boolean dataError) {
+        if (plan == null) {
+            return;
+        }
+        int slot = plan.slot(index);
+        if (slot < 0) {
+            if (slot == SiteLanePlan.UNKNOWN) {
+                LOG.warn("MeasurementSpecificCharacteristics not found for site '{}', index '{}", siteId, index);
+            }
+            return;
+        }
+        double laneValue = dataError ? Double.NaN : value;
+        switch (type) {
+            case FLOW -> {
+                flows[slot] = laneValue;
+                flowMask |= 1L << slot;
+            }
+            case SPEED -> {
+                speeds[slot] = laneValue;
+                speedMask |= 1L << slot;
+            }
+        }
+    }
+
+    @Override
+    public void endSite() {
+        int count = 0;
+        if ((flowMask != 0) && (Long.bitCount(flowMask) == Long.bitCount(speedMask))) {
+            for (long mask = flowMask; mask != 0; mask &= mask - 1) {
+                int slot = Long.numberOfTrailingZeros(mask);
+                double flowValue = flows[slot];
+                boolean hasSpeed = (speedMask & (1L << slot)) != 0;
+                laneIds[count] = plan.laneId(slot);
+                laneFlows[count] = flowValue;
+                laneSpeeds[count] = (flowValue > 0 && hasSpeed) ? speeds[slot] : Double.NaN;
+                count++;
+            }
+        }
+        long millis = (dateTime != null) ? dateTime.toEpochMilli() : TrafficSnapshot.NO_TIME;
+        builder.put(siteId, millis, count, laneIds, laneFlows, laneSpeeds);
+    }
+
+}
@@ -0,0 +1,70 @@
+package nl.bertriksikken.verkeersdrukte.traffic;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Common code for reading and writing binary snapshot files.
+ * <p>
+ * A snapshot starts with a magic number and a version, is written to a temporary file first, synced to disk and then
+ * moved into place atomically, so a crash never leaves a partially written snapshot. A snapshot is read through a
+ * memory-mapped buffer.
+ */
+final class SnapshotFile {
+
+    private SnapshotFile() {
+        // utility class
+    }
+
+    static void write(File file, int magic, int version, IContentWriter writer) throws IOException {
+        File tempFile = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tempFile)) {
+            DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(fos));
+            dos.writeInt(magic);
+            dos.writeInt(version);
+            writer.write(dos);
+            dos.flush();
+            // make sure the content is on disk before the rename can be
+            fos.getChannel().force(true);
+        }
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Maps a snapshot file, verifies the magic number and version and returns a buffer positioned at the content.
+     */
+    static ByteBuffer map(File file, int magic, int version) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if ((buffer.remaining() < 8) || (buffer.getInt() != magic) || (buffer.getInt() != version)) {
+                throw new IOException("Unsupported snapshot file " + file);
+            }
+            return buffer;
+        }
+    }
+
+    static void writeString(DataOutputStream dos, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        dos.writeInt(bytes.length);
+        dos.write(bytes);
+    }
+
+    static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    interface IContentWriter {
+        void write(DataOutputStream dos) throws IOException;
+    }
+}
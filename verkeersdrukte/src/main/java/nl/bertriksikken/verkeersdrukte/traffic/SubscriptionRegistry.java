@@ -0,0 +1,95 @@
+package nl.bertriksikken.verkeersdrukte.traffic;
+
+import nl.bertriksikken.verkeersdrukte.traffic.ITrafficHandler.ETopic;
+import nl.bertriksikken.verkeersdrukte.traffic.ITrafficHandler.INotifyData;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps track of subscriptions by topic and location, so an update only notifies the subscribers of the locations
+ * that actually changed.
+ * <p>
+ * A subscription without location gets notified once for every update of its topic that changed anything.
+ */
+final class SubscriptionRegistry {
+
+    private final Map<String, Subscription> byClient = new ConcurrentHashMap<>();
+    private final Map<ETopic, Map<String, Map<String, INotifyData>>> byLocation = new EnumMap<>(ETopic.class);
+    private final Map<ETopic, Map<String, INotifyData>> anyLocation = new EnumMap<>(ETopic.class);
+
+    SubscriptionRegistry() {
+        for (ETopic topic : ETopic.values()) {
+            byLocation.put(topic, new ConcurrentHashMap<>());
+            anyLocation.put(topic, new ConcurrentHashMap<>());
+        }
+    }
+
+    /**
+     * Subscribes a client to a topic, for one location or for any location if the location is null.
+     * A client has at most one subscription, subscribing again replaces the previous one.
+     */
+    synchronized void subscribe(String clientId, ETopic topic, String location, INotifyData callback) {
+        unsubscribe(clientId);
+        byClient.put(clientId, new Subscription(topic, location));
+        if (location == null) {
+            anyLocation.get(topic).put(clientId, callback);
+        } else {
+            byLocation.get(topic).computeIfAbsent(location, k -> new ConcurrentHashMap<>()).put(clientId, callback);
+        }
+    }
+
+    synchronized void unsubscribe(String clientId) {
+        Subscription subscription = byClient.remove(clientId);
+        if (subscription == null) {
+            return;
+        }
+        if (subscription.location() == null) {
+            anyLocation.get(subscription.topic()).remove(clientId);
+        } else {
+            byLocation.get(subscription.topic()).computeIfPresent(subscription.location(), (k, clients) -> {
+                clients.remove(clientId);
+                return clients.isEmpty() ? null : clients;
+            });
+        }
+    }
+
+    /**
+     * Notifies the subscribers of the changed locations of a topic, all subscribers of the topic if changed is null.
+     */
+    void notify(ETopic topic, Set<String> changed) {
+        if (changed != null && changed.isEmpty()) {
+            return;
+        }
+        List<INotifyData> callbacks = new ArrayList<>(anyLocation.get(topic).values());
+        Map<String, Map<String, INotifyData>> locations = byLocation.get(topic);
+        if (changed == null) {
+            locations.values().forEach(clients -> callbacks.addAll(clients.values()));
+        } else if (changed.size() < locations.size()) {
+            for (String location : changed) {
+                Map<String, INotifyData> clients = locations.get(location);
+                if (clients != null) {
+                    callbacks.addAll(clients.values());
+                }
+            }
+        } else {
+            locations.forEach((location, clients) -> {
+                if (changed.contains(location)) {
+                    callbacks.addAll(clients.values());
+                }
+            });
+        }
+        callbacks.forEach(INotifyData::notifyUpdate);
+    }
+
+    int size() {
+        return byClient.size();
+    }
+
+    private record Subscription(ETopic topic, String location) {
+    }
+}
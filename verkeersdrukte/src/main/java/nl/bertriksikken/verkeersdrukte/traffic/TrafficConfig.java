@@ -18,6 +18,12 @@ public final class TrafficConfig {
     private int expiryDurationMinutes = 60;
     @JsonProperty("shapeFileFolder")
     private String shapeFileFolder = ".shapefile";
+    @JsonProperty("snapshotFolder")
+    private String snapshotFolder = ".snapshot";
+    @JsonProperty("streamingDecoder")
+    private boolean streamingDecoder = false;
+    @JsonProperty("decodeParallelism")
+    private int decodeParallelism = 1;
 
     public ZoneId getTimeZone() {
         return ZoneId.of(timeZone);
@@ -34,4 +40,25 @@ public final class TrafficConfig {
     public File getShapeFileFolder() {
         return new File(shapeFileFolder);
     }
+
+    /**
+     * The folder where snapshots of the processed data are kept, for a fast restart.
+     */
+    public File getSnapshotFolder() {
+        return new File(snapshotFolder);
+    }
+
+    /**
+     * Whether to decode the trafficspeed publication with the StAX decoder instead of Jackson databind.
+     */
+    public boolean useStreamingDecoder() {
+        return streamingDecoder;
+    }
+
+    /**
+     * The number of threads decoding the trafficspeed publication, 1 decodes it on the scheduler thread.
+     */
+    public int getDecodeParallelism() {
+        return decodeParallelism;
+    }
 }
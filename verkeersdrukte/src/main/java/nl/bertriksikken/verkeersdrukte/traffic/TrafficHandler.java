@@ -4,24 +4,24 @@ import com.fasterxml.jackson.dataformat.xml.XmlMapper;
 import com.google.common.base.Stopwatch;
 import com.google.common.util.concurrent.Runnables;
 import io.dropwizard.lifecycle.Managed;
+import nl.bertriksikken.datex2.IMeasuredDataDecoder;
 import nl.bertriksikken.datex2.MeasuredDataPublication;
-import nl.bertriksikken.datex2.MeasuredValue;
-import nl.bertriksikken.datex2.MeasurementSiteRecord;
-import nl.bertriksikken.datex2.MeasurementSiteRecord.MeasurementSpecificCharacteristicsElement;
+import nl.bertriksikken.datex2.MeasuredDataStreamDecoder;
 import nl.bertriksikken.datex2.MeasurementSiteTable;
-import nl.bertriksikken.datex2.SiteMeasurements;
+import nl.bertriksikken.datex2v3.VmsController;
 import nl.bertriksikken.datex2v3.VmsPayload;
 import nl.bertriksikken.geojson.FeatureCollection;
 import nl.bertriksikken.geojson.FeatureCollection.Feature;
+import nl.bertriksikken.spatial.BoundingBox;
+import nl.bertriksikken.spatial.GridIndex;
+import nl.bertriksikken.spatial.GridIndex.Neighbour;
 import nl.bertriksikken.verkeersdrukte.app.VerkeersDrukteAppConfig;
-import nl.bertriksikken.verkeersdrukte.ndw.FileResponse;
 import nl.bertriksikken.verkeersdrukte.ndw.INdwApi;
 import nl.bertriksikken.verkeersdrukte.ndw.NdwClient;
 import nl.bertriksikken.verkeersdrukte.ndw.NdwDownloader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -31,9 +31,7 @@ import java.time.Instant;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
-import java.util.TreeMap;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.RejectedExecutionException;
@@ -45,159 +43,293 @@ import java.util.zip.GZIPInputStream;
 public final class TrafficHandler implements ITrafficHandler, Managed {
 
     private static final Logger LOG = LoggerFactory.getLogger(TrafficHandler.class);
-
-    private final Map<String, INotifyData> subscriptions = new ConcurrentHashMap<>();
-    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    // number of measurements kept per site, one per minute
+    private static final int HISTORY_DEPTH = 15;
+
+    private final SubscriptionRegistry subscriptions = new SubscriptionRegistry();
+    private final MeasurementHistory history = new MeasurementHistory(HISTORY_DEPTH);
+    private final ScheduledExecutorService executor;
+    private final FeedPipeline<Instant> referenceDataPipeline;
+    private final FeedPipeline<Instant> trafficSpeedPipeline;
+    private final FeedPipeline<Instant> vmsPipeline;
     private final XmlMapper xmlMapper = new XmlMapper();
     private final NdwClient ndwClient;
+    // only used on the fetch stage of their pipeline
+    private final ConditionalDownload trafficSpeedDownload;
+    private final ConditionalDownload vmsDownload;
     private final MeasurementCache measurementCache;
     private final NdwDownloader ndwDownloader;
     private final ShapeFileDownloader shapeFileDownloader;
-    private MeasurementSiteTable mst = new MeasurementSiteTable();
+    private final IMeasuredDataDecoder mdpDecoder;
+    private final ParallelDecoder parallelDecoder;
+    private final File referenceDataFile;
+    private final File measurementsFile;
 
-    private FeatureCollection shapeFile = new FeatureCollection();
-    private VmsPayload vmsPayload;
+    private volatile ReferenceData referenceData = ReferenceData.EMPTY;
+    private volatile VmsData vmsData = new VmsData(null, List.of());
+    // snapshot version that subscribers were last notified of, only used on the notify stage
+    private long notifiedVersion;
 
     public TrafficHandler(VerkeersDrukteAppConfig config) {
+        // the downloads mostly wait for the network, so they can run on a virtual thread
+        executor = config.useVirtualThreads() ?
+                Executors.newSingleThreadScheduledExecutor(Thread.ofVirtual().name("ndw-", 0).factory()) :
+                Executors.newSingleThreadScheduledExecutor();
+        Thread.Builder threadBuilder = config.useVirtualThreads() ? Thread.ofVirtual() : Thread.ofPlatform().daemon();
+
+        // each feed has its own pipeline, so a slow feed does not hold up the others, the fetch stage parses the
+        // response while it is streamed in, notifying clients and saving the snapshot overlaps with the next fetch
+        referenceDataPipeline = FeedPipeline.<Instant>builder("shapefile-mst", threadBuilder, 1)
+                .then("fetch", this::fetchShapeFileMst)
+                .build("parse", this::processShapeFileMst);
+        trafficSpeedPipeline = FeedPipeline.<Instant>builder("trafficspeed", threadBuilder, 1)
+                .then("fetch", this::fetchTrafficSpeed)
+                .build("notify", this::notifyTrafficSpeed);
+        vmsPipeline = FeedPipeline.<Instant>builder("vms", threadBuilder, 1)
+                .then("fetch", this::fetchVmsPublication)
+                .build("notify", this::notifyVmsPublication);
         ndwClient = NdwClient.create(config.getNdwConfig());
+        trafficSpeedDownload = new ConditionalDownload("traffic/speed", ndwClient::getTrafficSpeed);
+        vmsDownload = new ConditionalDownload("VMS publication", ndwClient::getVmsPayload);
         measurementCache = new MeasurementCache(config.getTrafficConfig().getExpiryDuration());
         ndwDownloader = new NdwDownloader(config.getNdwConfig());
         shapeFileDownloader = new ShapeFileDownloader(config.getTrafficConfig().getShapeFileFolder(), ndwDownloader);
+        mdpDecoder = config.getTrafficConfig().useStreamingDecoder() ?
+                new MeasuredDataStreamDecoder() : new MeasuredDataPublication(xmlMapper);
+        int parallelism = config.getTrafficConfig().getDecodeParallelism();
+        parallelDecoder = (parallelism > 1) ? new ParallelDecoder(mdpDecoder, parallelism) : null;
+        referenceDataFile = new File(config.getTrafficConfig().getSnapshotFolder(), "referencedata.bin");
+        measurementsFile = new File(config.getTrafficConfig().getSnapshotFolder(), "measurements.bin");
     }
 
     @Override
     public void start() {
         ndwDownloader.start();
 
+        // restore reference data from snapshot, so we can serve data before the shapefile/MST are processed
+        loadReferenceData();
+        restoreMeasurements();
+        notifiedVersion = measurementCache.snapshot().version();
+
+        referenceDataPipeline.start();
+        trafficSpeedPipeline.start();
+        vmsPipeline.start();
+
         // schedule shape file download
         LOG.info("Schedule shapefile/MST download ...");
-        schedule(this::downloadShapeFileMst, Duration.ZERO);
+        schedule(referenceDataPipeline, Duration.ZERO);
 
         // schedule regular fetches, starting immediately
         LOG.info("Schedule traffic speed download ...");
-        schedule(this::downloadTrafficSpeed, Duration.ZERO);
+        schedule(trafficSpeedPipeline, Duration.ZERO);
 
         // schedule VMS download
-        schedule(this::downloadVmsPublication, Duration.ZERO);
+        schedule(vmsPipeline, Duration.ZERO);
     }
 
+    // triggers a pipeline after a delay, the executor itself does not do any of the work
     @SuppressWarnings("FutureReturnValueIgnored")
-    private void schedule(Runnable action, Duration delay) {
-        Runnable runnable = () -> {
-            try {
-                action.run();
-            } catch (Throwable e) {
-                LOG.warn("Caught throwable in scheduled task, exiting ...", e);
-                System.exit(1);
+    private void schedule(FeedPipeline<Instant> pipeline, Duration delay) {
+        executor.schedule(() -> {
+            if (!pipeline.offer(Instant.now())) {
+                LOG.warn("Pipeline {} is still busy, skipping", pipeline);
             }
-        };
-        executor.schedule(runnable, delay.toMillis(), TimeUnit.MILLISECONDS);
+        }, delay.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    // triggers a pipeline again at the specified time
+    private void scheduleNext(FeedPipeline<Instant> pipeline, Instant next) {
+        Duration interval = Duration.between(Instant.now(), next);
+        if (interval.isNegative()) {
+            interval = Duration.ZERO;
+        }
+        LOG.info("Scheduling next {} download in {}", pipeline, interval);
+        schedule(pipeline, interval);
     }
 
     @Override
     public void stop() {
+        referenceDataPipeline.close();
+        trafficSpeedPipeline.close();
+        vmsPipeline.close();
         ndwDownloader.close();
         ndwClient.close();
         executor.shutdownNow();
+        if (parallelDecoder != null) {
+            parallelDecoder.close();
+        }
     }
 
-    private void downloadTrafficSpeed() {
+    // publishes here rather than in a later stage, so the next download builds on this one
+    private TrafficSnapshot fetchTrafficSpeed(Instant trigger) {
         LOG.info("Download traffic/speed");
-        Instant next;
         try {
-            FileResponse response = ndwClient.getTrafficSpeed();
-            Duration age = Duration.between(response.getLastModified(), Instant.now());
-            next = response.getLastModified().plusSeconds(65);
-            LOG.info("Got data, {} bytes, age {}", response.getContents().length, age);
-            decode(new ByteArrayInputStream(response.getContents()));
-        } catch (IOException e) {
-            LOG.warn("Download failed", e);
-            next = Instant.now().plusSeconds(60);
+            TrafficSnapshot.Builder builder = trafficSpeedDownload.fetch(this::decode);
+            if (builder == null) {
+                return null;
+            }
+            measurementCache.publish(builder);
+            TrafficSnapshot snapshot = measurementCache.snapshot();
+            LOG.info("Published snapshot {}, {} entries", snapshot.version(), measurementCache.size());
+            return snapshot;
+        } finally {
+            scheduleNext(trafficSpeedPipeline, trafficSpeedDownload.nextUpdate());
         }
+    }
 
-        // schedule next
-        Duration interval = Duration.between(Instant.now(), next);
-        while (interval.isNegative()) {
-            interval = interval.plusSeconds(60);
+    private void notifyTrafficSpeed(TrafficSnapshot snapshot) {
+        notifyTrafficSpeedClients(snapshot);
+        saveMeasurements();
+    }
+
+    private VmsData fetchVmsPublication(Instant trigger) {
+        LOG.info("Download VMS publication");
+        try {
+            VmsPayload payload = vmsDownload.fetch(this::decodeVmsPublication);
+            if (payload == null) {
+                return null;
+            }
+            vmsData = new VmsData(payload, payload.getControllers());
+            return vmsData;
+        } finally {
+            scheduleNext(vmsPipeline, vmsDownload.nextUpdate());
         }
-        LOG.info("Scheduling next download in {}", interval);
-        schedule(this::downloadTrafficSpeed, interval);
+    }
 
-        notifyClients();
+    private void notifyVmsPublication(VmsData data) {
+        subscriptions.notify(ETopic.VMS, null);
     }
 
-    private void downloadVmsPublication() {
-        LOG.info("Download VMS publication");
-        Instant next;
+    private void loadReferenceData() {
+        if (!referenceDataFile.exists()) {
+            return;
+        }
         try {
-            FileResponse response = ndwClient.getVmsPayload();
-            Duration age = Duration.between(response.getLastModified(), Instant.now());
-            next = response.getLastModified().plusSeconds(65);
-            LOG.info("Got data, {} bytes, age {}", response.getContents().length, age);
-            vmsPayload = decodeVmsPublication(new ByteArrayInputStream(response.getContents()));
+            Stopwatch sw = Stopwatch.createStarted();
+            referenceData = ReferenceData.load(referenceDataFile);
+            LOG.info("Loaded reference data snapshot, {} features, {} lane plans, took {}",
+                    referenceData.features().getFeatures().size(), referenceData.lanePlans().size(), sw.elapsed());
         } catch (IOException e) {
-            LOG.warn("Download VMS failed", e);
-            next = Instant.now().plusSeconds(60);
+            LOG.warn("Failed to load reference data snapshot: {}", e.getMessage());
         }
+    }
 
-        // schedule next
-        Duration interval = Duration.between(Instant.now(), next);
-        while (interval.isNegative()) {
-            interval = interval.plusSeconds(60);
+    private void restoreMeasurements() {
+        if (!measurementsFile.exists()) {
+            return;
+        }
+        try {
+            Stopwatch sw = Stopwatch.createStarted();
+            int count = measurementCache.restore(measurementsFile, Instant.now());
+            LOG.info("Restored {} measurements from snapshot, took {}", count, sw.elapsed());
+        } catch (IOException e) {
+            LOG.warn("Failed to restore measurement snapshot: {}", e.getMessage());
         }
-        LOG.info("Scheduling next VMS download in {}", interval);
-        schedule(this::downloadVmsPublication, interval);
-
-        notifyClients();
     }
 
-    private void downloadShapeFileMst() {
-        // get shape file
-        LOG.info("Fetching shapefile...");
+    private void saveMeasurements() {
         try {
-            if (shapeFileDownloader.download()) {
-                shapeFile = shapeFileDownloader.getGeoJson();
-                LOG.info("Parsed shapefile, {} features", shapeFile.getFeatures().size());
-            }
+            measurementsFile.getParentFile().mkdirs();
+            measurementCache.save(measurementsFile);
         } catch (IOException e) {
-            LOG.warn("Shapefile download failed with exception: {}", e.getMessage());
+            LOG.warn("Failed to save measurement snapshot: {}", e.getMessage());
+        }
+    }
+
+    // fetches the shapefile and MST, only passes them on if either of them changed
+    private ReferenceFiles fetchShapeFileMst(Instant trigger) {
+        LOG.info("Fetching shapefile and MST...");
+        File shapeFileZip = ndwDownloader.fetchFile(INdwApi.TRAFFIC_SPEED_SHAPEFILE);
+        File mstFile = ndwDownloader.fetchFile(INdwApi.MEASUREMENT_SITE_TABLE);
+        String shapeFileEtag = ndwDownloader.getEtag(INdwApi.TRAFFIC_SPEED_SHAPEFILE);
+        String mstEtag = ndwDownloader.getEtag(INdwApi.MEASUREMENT_SITE_TABLE);
+
+        // reschedule
+        schedule(referenceDataPipeline, Duration.ofDays(1));
+
+        if (referenceData.isBuiltFrom(shapeFileEtag, mstEtag)) {
+            LOG.info("Shapefile and MST not modified");
+            return null;
         }
+        return new ReferenceFiles(shapeFileZip, mstFile, shapeFileEtag, mstEtag);
+    }
 
-        // get MST
-        LOG.info("Fetching MST...");
+    private void processShapeFileMst(ReferenceFiles files) {
+        processShapeFileMst(files.shapeFileZip(), files.mstFile(), files.shapeFileEtag(), files.mstEtag());
+    }
+
+    private record ReferenceFiles(File shapeFileZip, File mstFile, String shapeFileEtag, String mstEtag) {
+    }
+
+    private void processShapeFileMst(File shapeFileZip, File mstFile, String shapeFileEtag, String mstEtag) {
+        // read shape file
+        FeatureCollection shapeFile;
         try {
-            File file = ndwDownloader.fetchFile(INdwApi.MEASUREMENT_SITE_TABLE);
-            if (file != null) {
-                try (FileInputStream fis = new FileInputStream(file);
-                     GZIPInputStream gzis = new GZIPInputStream(fis)) {
-                    LOG.info("Parsing MST...");
-                    Stopwatch sw = Stopwatch.createStarted();
-                    mst = new MeasurementSiteTable();
-                    mst.parse(gzis, shapeFileDownloader.getSiteIds());
-                    LOG.info("Parsed MST, {} entries, took {}", mst.getMeasurementSiteIds().size(), sw.elapsed());
-                }
-            } else {
-                LOG.warn("MST not downloaded");
+            if (shapeFileZip == null) {
+                LOG.warn("Shapefile not downloaded");
+                return;
             }
+            shapeFileDownloader.read(shapeFileZip);
+            shapeFile = shapeFileDownloader.getGeoJson();
+            LOG.info("Parsed shapefile, {} features", shapeFile.getFeatures().size());
         } catch (IOException e) {
-            LOG.warn("MST download failed: {}", e.getMessage());
+            LOG.warn("Shapefile processing failed with exception: {}", e.getMessage());
+            return;
         }
 
-        // reschedule
-        schedule(this::downloadShapeFileMst, Duration.ofDays(1));
+        // read MST
+        Map<String, SiteLanePlan> lanePlans;
+        if (mstFile == null) {
+            LOG.warn("MST not downloaded");
+            return;
+        }
+        try (FileInputStream fis = new FileInputStream(mstFile);
+             GZIPInputStream gzis = new GZIPInputStream(fis)) {
+            LOG.info("Parsing MST...");
+            Stopwatch sw = Stopwatch.createStarted();
+            MeasurementSiteTable mst = new MeasurementSiteTable();
+            mst.parse(gzis, shapeFileDownloader.getSiteIds());
+            LOG.info("Parsed MST, {} entries, took {}", mst.getMeasurementSiteIds().size(), sw.elapsed());
+            lanePlans = compileLanePlans(mst);
+        } catch (IOException e) {
+            LOG.warn("MST processing failed: {}", e.getMessage());
+            return;
+        }
+
+        // publish and save a snapshot for the next start
+        referenceData = new ReferenceData(shapeFileEtag, mstEtag, shapeFile, lanePlans);
+        try {
+            referenceDataFile.getParentFile().mkdirs();
+            referenceData.save(referenceDataFile);
+            LOG.info("Saved reference data snapshot to {}", referenceDataFile);
+        } catch (IOException e) {
+            LOG.warn("Failed to save reference data snapshot: {}", e.getMessage());
+        }
     }
 
-    private void decode(InputStream inputStream) throws IOException {
-        MeasuredDataPublication publication = new MeasuredDataPublication(xmlMapper);
+    // decodes into a builder, which is only published if the contents turn out to be new
+    private TrafficSnapshot.Builder decode(InputStream inputStream) throws IOException {
         try (GZIPInputStream gzis = new GZIPInputStream(inputStream)) {
             LOG.info("Parsing MDP...");
             Stopwatch sw = Stopwatch.createStarted();
-            publication.parse(gzis, record -> {
-                    SiteMeasurement siteMeasurement = processSiteMeasurements(record);
-                    measurementCache.put(record.reference.id, siteMeasurement);
-            });
-            LOG.info("Parsed MDP, {} entries in cache, took {}", measurementCache.size(), sw.elapsed());
+            Map<String, SiteLanePlan> lanePlans = referenceData.lanePlans();
+            TrafficSnapshot.Builder builder = measurementCache.update();
+            if (parallelDecoder != null) {
+                parallelDecoder.decode(gzis, () -> new SiteMeasurementCollector(lanePlans, builder));
+            } else {
+                mdpDecoder.decode(gzis, new SiteMeasurementCollector(lanePlans, builder));
+            }
+            LOG.info("Parsed MDP, took {}", sw.elapsed());
+            return builder;
+        }
+    }
+
+    private static Map<String, SiteLanePlan> compileLanePlans(MeasurementSiteTable mst) {
+        Map<String, SiteLanePlan> plans = new HashMap<>();
+        for (String id : mst.getMeasurementSiteIds()) {
+            plans.put(id, SiteLanePlan.compile(mst.findMeasurementSiteRecord(id)));
         }
+        return Map.copyOf(plans);
     }
 
     private VmsPayload decodeVmsPublication(InputStream inputStream) throws IOException {
@@ -211,96 +343,64 @@ public final class TrafficHandler implements ITrafficHandler, Managed {
         return payload;
     }
 
-    /**
-     * Processes NDW measurements, relating them to the MST,  finding the "anyVehicle" measurements per lane.
-     */
-    private SiteMeasurement processSiteMeasurements(SiteMeasurements measurements) {
-        Instant dateTime = measurements.getMeasurementTime();
-        SiteMeasurement measurement = new SiteMeasurement(dateTime);
-        // group by type
-        Map<String, MeasuredValue.TrafficFlow> flows = new TreeMap<>(); // sorted on keys (lane id)
-        Map<String, MeasuredValue.TrafficSpeed> speeds = new HashMap<>();
-        String siteId = measurements.reference.id;
-        MeasurementSiteRecord msr = mst.findMeasurementSiteRecord(siteId);
-        if (msr == null) {
-            return measurement;
-        }
-        for (MeasuredValue value : measurements.measuredValueList) {
-            // check vehicle type from MST against "anyVehicle"
-            MeasurementSpecificCharacteristicsElement chars =
-                    msr.findCharacteristic(value.index);
-            if (chars == null) {
-                LOG.warn("MeasurementSpecificCharacteristics not found for site '{}', index '{}", siteId, value.index);
-                continue;
-            }
-            String vehicleType = Objects.toString(chars.specificVehicleCharacteristics().vehicleType(), "");
-            if (!vehicleType.equals("anyVehicle")) {
-                continue;
-            }
-            String lane = chars.specificLane();
-            MeasuredValue.BasicData basicData = value.measuredValue.basicData();
-            switch (basicData.type) {
-                case MeasuredValue.TrafficFlow.TYPE -> flows.put(lane, (MeasuredValue.TrafficFlow) basicData);
-                case MeasuredValue.TrafficSpeed.TYPE -> speeds.put(lane, (MeasuredValue.TrafficSpeed) basicData);
-                default -> {
-                }
-            }
-        }
-        if (flows.isEmpty() || (flows.size() != speeds.size())) {
-            // cannot determine speed
-            return measurement;
-        }
+    @Override
+    public SiteMeasurement getDynamicData(String location) {
+        return measurementCache.get(location);
+    }
 
-        for (String lane : flows.keySet()) {
-            MeasuredValue.TrafficFlow flow = flows.get(lane);
-            MeasuredValue.TrafficSpeed speed = speeds.get(lane);
-            double flowValue = flow.vehicleFlow.dataError ? Double.NaN : flow.vehicleFlow.vehicleFlowRate;
-            double speedValue;
-            if (flowValue > 0) {
-                speedValue = speed.averageVehicleSpeed.dataError ? Double.NaN : speed.averageVehicleSpeed.speed;
-            } else {
-                speedValue = Double.NaN;
-            }
-            measurement.addLaneMeasurement(lane, flowValue, speedValue);
-        }
-        return measurement;
+    @Override
+    public List<SiteMeasurement> getDynamicHistory(String location, Instant after) {
+        return history.getMeasurements(location, after);
     }
 
     @Override
-    public SiteMeasurement getDynamicData(String location) {
-        return measurementCache.get(location);
+    public TrafficSnapshot getSnapshot() {
+        return measurementCache.snapshot();
     }
 
     @Override
     public FeatureCollection getStaticData() {
-        return shapeFile;
+        return referenceData.features();
     }
 
     @Override
     public Feature getStaticData(String location) {
-        for (Feature feature : shapeFile.getFeatures()) {
-            String dlgLoc = feature.getProperties().get("dgl_loc").toString();
-            if (location.equals(dlgLoc)) {
-                return feature;
-            }
-        }
-        // not found
-        return null;
+        return referenceData.featureIndex().get(location);
+    }
+
+    @Override
+    public List<Feature> getStaticData(BoundingBox bbox) {
+        return referenceData.spatialIndex().query(bbox);
+    }
+
+    @Override
+    public List<Neighbour<Feature>> findNearestSites(double lat, double lon, int k) {
+        return referenceData.spatialIndex().nearest(lat, lon, k);
     }
 
     @Override
     public VmsPayload getVmsPayload() {
-        return vmsPayload;
+        return vmsData.payload();
+    }
+
+    @Override
+    public List<Neighbour<VmsController>> findNearestDrips(double lat, double lon, int k) {
+        return vmsData.spatialIndex().nearest(lat, lon, k);
     }
 
     @Override
-    public void subscribe(String clientId, INotifyData callback) {
-        subscriptions.put(clientId, callback);
+    public List<VmsController> getDrips(BoundingBox bbox) {
+        return vmsData.spatialIndex().query(bbox);
+    }
+
+    @Override
+    public void subscribe(String clientId, ETopic topic, String location, INotifyData callback) {
+        subscriptions.subscribe(clientId, topic, location, callback);
     }
 
     @Override
     public void unsubscribe(String clientId) {
-        subscriptions.remove(clientId);
+        subscriptions.unsubscribe(clientId);
     }
 
     @Override
@@ -311,11 +411,25 @@ public final class TrafficHandler implements ITrafficHandler, Managed {
         } catch (RejectedExecutionException | InterruptedException | TimeoutException | ExecutionException e) {
             return false;
         }
-        return true;
+        return referenceDataPipeline.isRunning() && trafficSpeedPipeline.isRunning() && vmsPipeline.isRunning();
+    }
+
+    // VMS payload, with its controllers indexed by position
+    private record VmsData(VmsPayload payload, GridIndex<VmsController> spatialIndex) {
+        VmsData(VmsPayload payload, List<VmsController> controllers) {
+            this(payload, new GridIndex<>(controllers.stream().filter(VmsController::hasLocationData).toList(),
+                    c -> c.findLocationData().latitude(), c -> c.findLocationData().longitude(), 0.05));
+        }
     }
 
-    private void notifyClients() {
-        List.copyOf(subscriptions.values()).forEach(INotifyData::notifyUpdate);
+    // records the history of and notifies only the subscribers of sites that got a new measurement since the previous
+    // notification
+    private void notifyTrafficSpeedClients(TrafficSnapshot snapshot) {
+        // a new measurement with the same values is still news to a subscriber of that site, and for its history
+        Set<String> measured = snapshot.measuredSince(notifiedVersion);
+        history.record(snapshot, measured);
+        subscriptions.notify(ETopic.TRAFFIC_SPEED, measured);
+        notifiedVersion = snapshot.version();
     }
 
 }
@@ -0,0 +1,435 @@
+package nl.bertriksikken.verkeersdrukte.traffic;
+
+import nl.bertriksikken.verkeersdrukte.traffic.SiteMeasurement.LaneMeasurement;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * Immutable snapshot of the latest measurement per site, as published after an ingest cycle.
+ * <p>
+ * Site ids are dictionary-encoded to ordinals, all data is kept in flat arrays indexed by ordinal. The lanes of a site
+ * occupy a range of slots in the lane arrays. A new snapshot is made with a {@link Builder}, which copies the arrays of
+ * its predecessor, so a snapshot never changes once published and can be read without locking.
+ * <p>
+ * Entries expire a fixed duration after they were written.
+ * <p>
+ * A snapshot also keeps the sets of sites that changed in the most recent ingest cycles, so clients can ask for the
+ * changes since a version they already have. A site whose measurement expired since the previous snapshot counts as
+ * changed too, its measurement is then gone. Separately, it keeps which sites got a new measurement at all, also when
+ * its values are the same as before, for the subscribers that want every measurement. Versions start at the startup time in milliseconds, so they keep
+ * increasing across restarts.
+ */
+public final class TrafficSnapshot {
+
+    static final long NO_TIME = Long.MIN_VALUE;
+    static final int MAX_CHANGE_SETS = 60;
+
+    private final long version;
+    private final Instant published;
+    private final long expiryMillis;
+    private final Map<String, Integer> ordinals;
+    private final int siteCount;
+    private final String[] siteIds;
+    private final long[] writeTimes;
+    private final long[] measurementTimes;
+    private final int[] laneOffsets;
+    private final byte[] laneCapacities;
+    private final byte[] laneCounts;
+    private final int laneSize;
+    private final String[] laneIds;
+    private final float[] flows;
+    private final float[] speeds;
+    private final List<ChangeSet> changeSets;
+
+    private TrafficSnapshot(Builder builder) {
+        this.version = builder.version;
+        this.published = Instant.now();
+        this.expiryMillis = builder.expiryMillis;
+        this.ordinals = Map.copyOf(builder.ordinals);
+        this.siteCount = builder.ordinals.size();
+        this.siteIds = builder.siteIds;
+        this.writeTimes = builder.writeTimes;
+        this.measurementTimes = builder.measurementTimes;
+        this.laneOffsets = builder.laneOffsets;
+        this.laneCapacities = builder.laneCapacities;
+        this.laneCounts = builder.laneCounts;
+        this.laneSize = builder.laneSize;
+        this.laneIds = builder.laneIds;
+        this.flows = builder.flows;
+        this.speeds = builder.speeds;
+        this.changeSets = builder.buildChangeSets();
+    }
+
+    static TrafficSnapshot empty(long expiryMillis) {
+        return new Builder(System.currentTimeMillis(), expiryMillis).build();
+    }
+
+    /**
+     * Returns the version of this snapshot, incremented by one for each published snapshot.
+     */
+    public long version() {
+        return version;
+    }
+
+    /**
+     * Returns the time this snapshot was published.
+     */
+    public Instant published() {
+        return published;
+    }
+
+    /**
+     * Returns the measurement of a site, or null if there is none or it has expired.
+     */
+    public SiteMeasurement getMeasurement(String location) {
+        Integer ordinal = ordinals.get(location);
+        if ((ordinal == null) || isExpired(ordinal, System.currentTimeMillis())) {
+            return null;
+        }
+        return toMeasurement(ordinal);
+    }
+
+    private SiteMeasurement toMeasurement(int ordinal) {
+        long millis = measurementTimes[ordinal];
+        SiteMeasurement measurement = new SiteMeasurement((millis != NO_TIME) ? Instant.ofEpochMilli(millis) : null);
+        int offset = laneOffsets[ordinal];
+        for (int i = 0; i < laneCounts[ordinal]; i++) {
+            measurement.addLaneMeasurement(laneIds[offset + i], flows[offset + i], speeds[offset + i]);
+        }
+        return measurement;
+    }
+
+    /**
+     * Returns the number of sites with a measurement that has not expired.
+     */
+    public int size() {
+        return size(System.currentTimeMillis());
+    }
+
+    /**
+     * Returns the number of sites with a measurement that has not expired at the specified time.
+     */
+    int size(long now) {
+        int count = 0;
+        for (int ordinal = 0; ordinal < siteCount; ordinal++) {
+            if (!isExpired(ordinal, now)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Visits the sites with a measurement that has not expired, in ordinal order.
+     */
+    void forEach(ISiteVisitor visitor) throws IOException {
+        forEach(visitor, System.currentTimeMillis());
+    }
+
+    /**
+     * Visits the sites with a measurement that has not expired at the specified time, in ordinal order.
+     */
+    void forEach(ISiteVisitor visitor, long now) throws IOException {
+        for (int ordinal = 0; ordinal < siteCount; ordinal++) {
+            if (!isExpired(ordinal, now)) {
+                visitor.visit(siteIds[ordinal], measurementTimes[ordinal], laneOffsets[ordinal], laneCounts[ordinal]);
+            }
+        }
+    }
+
+    /**
+     * Visits the measurements of all sites that have not expired, in ordinal order.
+     */
+    public void forEachMeasurement(BiConsumer<String, SiteMeasurement> consumer) {
+        long now = System.currentTimeMillis();
+        for (int ordinal = 0; ordinal < siteCount; ordinal++) {
+            if (!isExpired(ordinal, now)) {
+                consumer.accept(siteIds[ordinal], toMeasurement(ordinal));
+            }
+        }
+    }
+
+    /**
+     * Returns the first moment after the specified time at which an entry expires, or null if none will.
+     */
+    public Instant nextExpiry(Instant now) {
+        long nowMillis = now.toEpochMilli();
+        long next = Long.MAX_VALUE;
+        for (int ordinal = 0; ordinal < siteCount; ordinal++) {
+            long expiry = writeTimes[ordinal] + expiryMillis;
+            if (expiry > nowMillis && expiry < next) {
+                next = expiry;
+            }
+        }
+        return (next != Long.MAX_VALUE) ? Instant.ofEpochMilli(next) : null;
+    }
+
+    /**
+     * Returns the ids of the sites that changed (or expired) after the specified version, or null if that version is
+     * too old (or too new) to tell.
+     */
+    public Set<String> changedSince(long since) {
+        if (since == version) {
+            return Set.of();
+        }
+        if (since > version || changeSets.isEmpty() || since < changeSets.get(0).version() - 1) {
+            return null;
+        }
+        Set<String> changed = new LinkedHashSet<>();
+        for (ChangeSet changeSet : changeSets) {
+            if (changeSet.version() > since) {
+                changed.addAll(changeSet.siteIds());
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Returns the ids of the sites that got a new measurement (or changed, or expired) after the specified version, or
+     * null if that version is too old (or too new) to tell.
+     */
+    public Set<String> measuredSince(long since) {
+        if (since == version) {
+            return Set.of();
+        }
+        if (since > version || changeSets.isEmpty() || since < changeSets.get(0).version() - 1) {
+            return null;
+        }
+        BitSet measured = new BitSet();
+        for (ChangeSet changeSet : changeSets) {
+            if (changeSet.version() > since) {
+                measured.or(changeSet.measured());
+            }
+        }
+        Set<String> sites = new LinkedHashSet<>();
+        measured.stream().forEach(ordinal -> sites.add(siteIds[ordinal]));
+        return sites;
+    }
+
+    String laneId(int lane) {
+        return laneIds[lane];
+    }
+
+    float flow(int lane) {
+        return flows[lane];
+    }
+
+    float speed(int lane) {
+        return speeds[lane];
+    }
+
+    private boolean isExpired(int ordinal, long now) {
+        return (writeTimes[ordinal] + expiryMillis) <= now;
+    }
+
+    /**
+     * Returns a builder for the next version, starting with the contents of this snapshot.
+     */
+    Builder toBuilder() {
+        return new Builder(this);
+    }
+
+    // the sites whose values changed, and the ordinals of the sites with a new measurement, a superset of those
+    private record ChangeSet(long version, List<String> siteIds, BitSet measured) {
+    }
+
+    interface ISiteVisitor {
+        void visit(String siteId, long measurementMillis, int laneOffset, int laneCount) throws IOException;
+    }
+
+    /**
+     * Collects the measurements of one ingest cycle, may be written to from multiple threads.
+     */
+    static final class Builder {
+
+        private final long version;
+        private final long expiryMillis;
+        private final long previousPublished;
+        private final List<ChangeSet> previousChangeSets;
+        private final BitSet changed = new BitSet();
+        private final BitSet measured = new BitSet();
+        private final Map<String, Integer> ordinals;
+        private String[] siteIds;
+        private long[] writeTimes;
+        private long[] measurementTimes;
+        private int[] laneOffsets;
+        private byte[] laneCapacities;
+        private byte[] laneCounts;
+        private int laneSize;
+        private String[] laneIds;
+        private float[] flows;
+        private float[] speeds;
+
+        private Builder(long version, long expiryMillis) {
+            this.version = version;
+            this.expiryMillis = expiryMillis;
+            previousPublished = NO_TIME;
+            previousChangeSets = List.of();
+            ordinals = new HashMap<>();
+            siteIds = new String[0];
+            writeTimes = new long[0];
+            measurementTimes = new long[0];
+            laneOffsets = new int[0];
+            laneCapacities = new byte[0];
+            laneCounts = new byte[0];
+            laneIds = new String[0];
+            flows = new float[0];
+            speeds = new float[0];
+        }
+
+        private Builder(TrafficSnapshot previous) {
+            this.version = previous.version + 1;
+            this.expiryMillis = previous.expiryMillis;
+            previousPublished = previous.published.toEpochMilli();
+            previousChangeSets = previous.changeSets;
+            ordinals = new HashMap<>(previous.ordinals);
+            siteIds = previous.siteIds.clone();
+            writeTimes = previous.writeTimes.clone();
+            measurementTimes = previous.measurementTimes.clone();
+            laneOffsets = previous.laneOffsets.clone();
+            laneCapacities = previous.laneCapacities.clone();
+            laneCounts = previous.laneCounts.clone();
+            laneSize = previous.laneSize;
+            laneIds = previous.laneIds.clone();
+            flows = previous.flows.clone();
+            speeds = previous.speeds.clone();
+        }
+
+        void put(String location, SiteMeasurement measurement) {
+            List<LaneMeasurement> lanes = measurement.getLanes();
+            int count = lanes.size();
+            String[] ids = new String[count];
+            double[] laneFlows = new double[count];
+            double[] laneSpeeds = new double[count];
+            for (int i = 0; i < count; i++) {
+                LaneMeasurement lane = lanes.get(i);
+                ids[i] = lane.id();
+                laneFlows[i] = lane.flow();
+                laneSpeeds[i] = lane.speed();
+            }
+            Instant dateTime = measurement.getDateTime();
+            put(location, (dateTime != null) ? dateTime.toEpochMilli() : NO_TIME, count, ids, laneFlows, laneSpeeds);
+        }
+
+        /**
+         * Stores the lanes of a site from the first {@code count} elements of the arrays, without intermediate objects.
+         */
+        void put(String location, long measurementMillis, int count, String[] ids, double[] laneFlows,
+                 double[] laneSpeeds) {
+            put(location, measurementMillis, System.currentTimeMillis(), count, ids, laneFlows, laneSpeeds);
+        }
+
+        /**
+         * Stores the lanes of a site like {@link #put(String, long, int, String[], double[], double[])}, with an
+         * explicit write time, from which the entry expires.
+         */
+        synchronized void put(String location, long measurementMillis, long writeMillis, int count, String[] ids,
+                              double[] laneFlows, double[] laneSpeeds) {
+            int ordinal = ordinals.computeIfAbsent(location, this::addSite);
+            if (isChanged(ordinal, count, ids, laneFlows, laneSpeeds)) {
+                changed.set(ordinal);
+                measured.set(ordinal);
+            } else if (measurementTimes[ordinal] != measurementMillis) {
+                // same values, but still a new measurement
+                measured.set(ordinal);
+            }
+            if (count > laneCapacities[ordinal]) {
+                laneOffsets[ordinal] = allocateLanes(count);
+                laneCapacities[ordinal] = (byte) count;
+            }
+            int offset = laneOffsets[ordinal];
+            for (int i = 0; i < count; i++) {
+                laneIds[offset + i] = ids[i];
+                flows[offset + i] = (float) laneFlows[i];
+                speeds[offset + i] = (float) laneSpeeds[i];
+            }
+            laneCounts[ordinal] = (byte) count;
+            measurementTimes[ordinal] = measurementMillis;
+            writeTimes[ordinal] = writeMillis;
+        }
+
+        /**
+         * Checks if the builder has a measurement for a site that has not expired.
+         */
+        synchronized boolean contains(String location) {
+            Integer ordinal = ordinals.get(location);
+            return (ordinal != null) && (writeTimes[ordinal] + expiryMillis) > System.currentTimeMillis();
+        }
+
+        synchronized TrafficSnapshot build() {
+            return new TrafficSnapshot(this);
+        }
+
+        private boolean isChanged(int ordinal, int count, String[] ids, double[] laneFlows, double[] laneSpeeds) {
+            if ((laneCounts[ordinal] != count) || (writeTimes[ordinal] + expiryMillis) <= System.currentTimeMillis()) {
+                return true;
+            }
+            int offset = laneOffsets[ordinal];
+            for (int i = 0; i < count; i++) {
+                if (!laneIds[offset + i].equals(ids[i])
+                        || Float.compare(flows[offset + i], (float) laneFlows[i]) != 0
+                        || Float.compare(speeds[offset + i], (float) laneSpeeds[i]) != 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private List<ChangeSet> buildChangeSets() {
+            // sites that expired since the previous snapshot are gone, which is a change too
+            long now = System.currentTimeMillis();
+            int siteCount = ordinals.size();
+            for (int ordinal = 0; ordinal < siteCount; ordinal++) {
+                long expiry = writeTimes[ordinal] + expiryMillis;
+                if (expiry > previousPublished && expiry <= now) {
+                    changed.set(ordinal);
+                }
+            }
+            measured.or(changed);
+            List<String> siteIds = changed.stream().mapToObj(ordinal -> this.siteIds[ordinal]).toList();
+            List<ChangeSet> changeSets = new ArrayList<>(previousChangeSets);
+            changeSets.add(new ChangeSet(version, siteIds, (BitSet) measured.clone()));
+            while (changeSets.size() > MAX_CHANGE_SETS) {
+                changeSets.remove(0);
+            }
+            return List.copyOf(changeSets);
+        }
+
+        private int addSite(String location) {
+            int ordinal = ordinals.size();
+            if (ordinal == siteIds.length) {
+                int capacity = Math.max(1024, 2 * siteIds.length);
+                siteIds = Arrays.copyOf(siteIds, capacity);
+                writeTimes = Arrays.copyOf(writeTimes, capacity);
+                measurementTimes = Arrays.copyOf(measurementTimes, capacity);
+                laneOffsets = Arrays.copyOf(laneOffsets, capacity);
+                laneCapacities = Arrays.copyOf(laneCapacities, capacity);
+                laneCounts = Arrays.copyOf(laneCounts, capacity);
+            }
+            siteIds[ordinal] = location;
+            return ordinal;
+        }
+
+        private int allocateLanes(int count) {
+            int offset = laneSize;
+            if (offset + count > laneIds.length) {
+                int capacity = Math.max(4096, 2 * (offset + count));
+                laneIds = Arrays.copyOf(laneIds, capacity);
+                flows = Arrays.copyOf(flows, capacity);
+                speeds = Arrays.copyOf(speeds, capacity);
+            }
+            laneSize += count;
+            return offset;
+        }
+    }
+}
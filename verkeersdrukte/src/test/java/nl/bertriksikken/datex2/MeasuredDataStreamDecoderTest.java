@@ -0,0 +1,105 @@
+package nl.bertriksikken.datex2;
+
+import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import com.google.common.base.Stopwatch;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+public final class MeasuredDataStreamDecoderTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MeasuredDataStreamDecoderTest.class);
+
+    /**
+     * Verifies that the StAX decoder produces exactly the same tuples as the Jackson databind decoder.
+     */
+    @Test
+    public void testSameAsJackson() throws IOException {
+        TupleSink staxSink = new TupleSink();
+        try (InputStream is = getClass().getResourceAsStream("/trafficspeed.xml.gz");
+             GZIPInputStream gzis = new GZIPInputStream(is)) {
+            Stopwatch sw = Stopwatch.createStarted();
+            new MeasuredDataStreamDecoder().decode(gzis, staxSink);
+            LOG.info("StAX decoder took {}", sw.elapsed());
+        }
+
+        TupleSink jacksonSink = new TupleSink();
+        try (InputStream is = getClass().getResourceAsStream("/trafficspeed.xml.gz");
+             GZIPInputStream gzis = new GZIPInputStream(is)) {
+            Stopwatch sw = Stopwatch.createStarted();
+            new MeasuredDataPublication(new XmlMapper()).parse(gzis, record -> record.replay(jacksonSink));
+            LOG.info("Jackson decoder took {}", sw.elapsed());
+        }
+
+        assertFalse(staxSink.tuples.isEmpty());
+        assertEquals(jacksonSink.tuples.size(), staxSink.tuples.size());
+        assertEquals(jacksonSink.tuples, staxSink.tuples);
+    }
+
+    /**
+     * Verifies that values with only a data error (and no flow or speed element) are decoded the same as well.
+     */
+    @Test
+    public void testDataErrorSameAsJackson() throws IOException {
+        String xml = """
+                <d2LogicalModel xmlns="http://datex2.eu/schema/2/2_0" xmlns:xsi="http://www.w3.org/2001/XMLSchema-instance">
+                <payloadPublication xsi:type="MeasuredDataPublication">
+                <siteMeasurements>
+                <measurementSiteReference id="SITE" version="1" targetClass="MeasurementSiteRecord"/>
+                <measurementTimeDefault>2025-08-15T21:48:00Z</measurementTimeDefault>
+                <measuredValue index="1"><measuredValue><basicData xsi:type="TrafficFlow">
+                <vehicleFlow><dataError>true</dataError></vehicleFlow>
+                </basicData></measuredValue></measuredValue>
+                <measuredValue index="2"><measuredValue><basicData xsi:type="TrafficSpeed">
+                <averageVehicleSpeed numberOfInputValuesUsed="0"><dataError>true</dataError></averageVehicleSpeed>
+                </basicData></measuredValue></measuredValue>
+                </siteMeasurements>
+                </payloadPublication>
+                </d2LogicalModel>
+                """;
+        byte[] data = xml.getBytes(StandardCharsets.UTF_8);
+
+        TupleSink staxSink = new TupleSink();
+        new MeasuredDataStreamDecoder().decode(new ByteArrayInputStream(data), staxSink);
+        TupleSink jacksonSink = new TupleSink();
+        new MeasuredDataPublication(new XmlMapper()).decode(new ByteArrayInputStream(data), jacksonSink);
+
+        assertEquals(List.of("SITE@2025-08-15T21:48:00Z", "SITE/1/FLOW=0.0,true", "SITE/2/SPEED=-1.0,true", "SITE end"),
+                jacksonSink.tuples);
+        assertEquals(jacksonSink.tuples, staxSink.tuples);
+    }
+
+    private static final class TupleSink implements IMeasuredValueSink {
+        private final List<String> tuples = new ArrayList<>();
+        private String siteId;
+
+        @Override
+        public void startSite(String siteId, Instant measurementTime) {
+            this.siteId = siteId;
+            tuples.add(siteId + "@" + measurementTime);
+        }
+
+        @Override
+        public void measuredValue(int index, EValueType type, double value, boolean dataError) {
+            tuples.add(siteId + "/" + index + "/" + type + "=" + value + "," + dataError);
+        }
+
+        @Override
+        public void endSite() {
+            tuples.add(siteId + " end");
+        }
+    }
+
+}
@@ -0,0 +1,123 @@
+package nl.bertriksikken.datex2;
+
+import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class SiteMeasurementsChunkerTest {
+
+    /**
+     * Verifies that decoding all chunks yields the same sites as decoding the whole publication.
+     */
+    @Test
+    public void testSplit() throws IOException {
+        MeasuredDataStreamDecoder decoder = new MeasuredDataStreamDecoder();
+        SiteSink wholeSink = new SiteSink();
+        try (InputStream is = getClass().getResourceAsStream("/trafficspeed.xml.gz");
+             GZIPInputStream gzis = new GZIPInputStream(is)) {
+            decoder.decode(gzis, wholeSink);
+        }
+
+        SiteSink chunkSink = new SiteSink();
+        SiteSink jacksonSink = new SiteSink();
+        List<byte[]> chunks = new ArrayList<>();
+        try (InputStream is = getClass().getResourceAsStream("/trafficspeed.xml.gz");
+             GZIPInputStream gzis = new GZIPInputStream(is)) {
+            new SiteMeasurementsChunker(100).split(gzis, chunks::add);
+        }
+        MeasuredDataPublication jacksonDecoder = new MeasuredDataPublication(new XmlMapper());
+        for (byte[] chunk : chunks) {
+            decoder.decode(new ByteArrayInputStream(chunk), chunkSink);
+            jacksonDecoder.decode(new ByteArrayInputStream(chunk), jacksonSink);
+        }
+
+        assertTrue(chunks.size() > 1);
+        assertEquals(wholeSink.sites, chunkSink.sites);
+        assertEquals(wholeSink.values, chunkSink.values);
+        assertEquals(wholeSink.sites, jacksonSink.sites);
+        assertEquals(wholeSink.values, jacksonSink.values);
+    }
+
+    /**
+     * Verifies that prefixed records are found, and that the chunks declare the prefixes of the original document.
+     */
+    @Test
+    public void testPrefixedNamespace() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        sb.append("<d2:d2LogicalModel xmlns:d2=\"http://datex2.eu/schema/2/2_0\">");
+        sb.append("<d2:payloadPublication xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"");
+        sb.append(" xsi:type=\"MeasuredDataPublication\">");
+        for (int i = 0; i < 3; i++) {
+            sb.append("<d2:siteMeasurements>");
+            sb.append("<d2:measurementSiteReference id=\"SITE").append(i).append("\" version=\"1\"/>");
+            sb.append("<d2:measurementTimeDefault>2025-08-15T21:48:00Z</d2:measurementTimeDefault>");
+            sb.append("<d2:measuredValue index=\"1\"><d2:measuredValue><d2:basicData xsi:type=\"TrafficSpeed\">");
+            sb.append("<d2:averageVehicleSpeed><d2:speed>80</d2:speed></d2:averageVehicleSpeed>");
+            sb.append("</d2:basicData></d2:measuredValue></d2:measuredValue>");
+            sb.append("</d2:siteMeasurements >");
+        }
+        sb.append("</d2:payloadPublication></d2:d2LogicalModel>");
+        byte[] data = sb.toString().getBytes(StandardCharsets.UTF_8);
+
+        List<byte[]> chunks = new ArrayList<>();
+        new SiteMeasurementsChunker(2).split(new ByteArrayInputStream(data), chunks::add);
+        SiteSink sink = new SiteSink();
+        MeasuredDataPublication jacksonDecoder = new MeasuredDataPublication(new XmlMapper());
+        for (byte[] chunk : chunks) {
+            jacksonDecoder.decode(new ByteArrayInputStream(chunk), sink);
+        }
+
+        assertEquals(2, chunks.size());
+        assertEquals(List.of("SITE0", "SITE1", "SITE2"), sink.sites);
+        assertEquals(3, sink.values);
+    }
+
+    /**
+     * Verifies that a publication that is cut off in the middle of a record is an error.
+     */
+    @Test
+    public void testTruncated() throws IOException {
+        byte[] data;
+        try (InputStream is = getClass().getResourceAsStream("/trafficspeed.xml.gz");
+             GZIPInputStream gzis = new GZIPInputStream(is)) {
+            data = gzis.readAllBytes();
+        }
+        SiteMeasurementsChunker chunker = new SiteMeasurementsChunker(100);
+        InputStream truncated = new ByteArrayInputStream(data, 0, data.length / 2);
+        assertThrows(IOException.class, () -> chunker.split(truncated, chunk -> {
+        }));
+    }
+
+    private static final class SiteSink implements IMeasuredValueSink {
+        private final List<String> sites = new ArrayList<>();
+        private int values;
+
+        @Override
+        public void startSite(String siteId, Instant measurementTime) {
+            sites.add(siteId);
+        }
+
+        @Override
+        public void measuredValue(int index, EValueType type, double value, boolean dataError) {
+            values++;
+        }
+
+        @Override
+        public void endSite() {
+            // nothing to do
+        }
+    }
+
+}
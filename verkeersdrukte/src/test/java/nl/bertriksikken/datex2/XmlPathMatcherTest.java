@@ -0,0 +1,56 @@
+package nl.bertriksikken.datex2;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public final class XmlPathMatcherTest {
+
+    private static final String XML = "<root><table><record><id>1</id></record><other><record/></other></table>"
+            + "<record><id>2</id></record></root>";
+
+    @Test
+    public void testMatch() throws IOException {
+        XmlPathMatcher.Tracker matcher = new XmlPathMatcher("table/record", "/id").tracker();
+        List<Integer> matches = new ArrayList<>();
+        try (JsonParser parser = new XmlMapper().createParser(XML)) {
+            for (JsonToken token = parser.nextToken(); token != null; token = parser.nextToken()) {
+                if (token.isStructStart()) {
+                    matches.add(matcher.match(parser));
+                }
+            }
+        }
+        // root, table, table/record, table/other, record (the empty record is not a struct)
+        assertEquals(List.of(-1, -1, 0, -1, -1), matches);
+    }
+
+    /**
+     * Verifies that the path is still tracked when the caller reads some elements as a whole.
+     */
+    @Test
+    public void testSkipped() throws IOException {
+        String xml = "<root><a><b><c><x/><y>1</y></c></b></a><a><c><d>2</d></c></a><b><c><d>3</d></c></b></root>";
+        XmlPathMatcher.Tracker matcher = new XmlPathMatcher("a/b/c", "b/c").tracker();
+        List<String> matches = new ArrayList<>();
+        try (JsonParser parser = new XmlMapper().createParser(xml)) {
+            for (JsonToken token = parser.nextToken(); token != null; token = parser.nextToken()) {
+                if (token.isStructStart()) {
+                    int match = matcher.match(parser);
+                    if (match >= 0) {
+                        matches.add(match + ":" + parser.readValueAsTree());
+                    }
+                }
+            }
+        }
+        // a/c is not a/b/c, b/c at the end matches only the second path
+        assertEquals(List.of("0:{\"x\":\"\",\"y\":\"1\"}", "1:{\"d\":\"3\"}"), matches);
+    }
+
+}
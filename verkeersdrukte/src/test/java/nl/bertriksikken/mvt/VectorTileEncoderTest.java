@@ -0,0 +1,103 @@
+package nl.bertriksikken.mvt;
+
+import nl.bertriksikken.spatial.BoundingBox;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class VectorTileEncoderTest {
+
+    @Test
+    public void testBoundingBox() {
+        BoundingBox bbox = new VectorTileEncoder(0, 0, 0).getBoundingBox();
+        assertEquals(-180.0, bbox.minLon());
+        assertEquals(180.0, bbox.maxLon());
+        assertTrue(bbox.maxLat() > 85.0);
+        assertThrows(IllegalArgumentException.class, () -> new VectorTileEncoder(1, 2, 0));
+    }
+
+    /**
+     * Encodes a single point and decodes the tile again with a minimal protobuf reader.
+     */
+    @Test
+    public void testEncodePoint() {
+        VectorTileEncoder encoder = new VectorTileEncoder(1, 1, 0);
+        // (0,0) is the bottom-left corner of tile 1/1/0
+        encoder.addLayer("traffic").addPoint(7, 0.0, 0.0, Map.of("id", "site", "flow", 600L));
+        ByteBuffer tile = ByteBuffer.wrap(encoder.encode());
+
+        assertEquals((3 << 3) | 2, readVarint(tile));
+        ByteBuffer layer = readMessage(tile);
+        assertEquals(0, tile.remaining());
+
+        List<String> keys = new ArrayList<>();
+        int[] geometry = null;
+        String name = null;
+        long version = 0;
+        long extent = 0;
+        while (layer.hasRemaining()) {
+            int tag = (int) readVarint(layer);
+            switch (tag >>> 3) {
+                case 15 -> version = readVarint(layer);
+                case 1 -> name = StandardCharsets.UTF_8.decode(readMessage(layer)).toString();
+                case 3 -> keys.add(StandardCharsets.UTF_8.decode(readMessage(layer)).toString());
+                case 5 -> extent = readVarint(layer);
+                case 2 -> geometry = readGeometry(readMessage(layer));
+                default -> readMessage(layer);
+            }
+        }
+        assertEquals(2, version);
+        assertEquals("traffic", name);
+        assertEquals(4096, extent);
+        assertEquals(2, keys.size());
+        assertTrue(keys.containsAll(List.of("id", "flow")));
+        // MoveTo(1), x=0, y=4096 (zigzag encoded)
+        assertEquals(List.of(9, 0, 8192), List.of(geometry[0], geometry[1], geometry[2]));
+    }
+
+    private static int[] readGeometry(ByteBuffer feature) {
+        int[] geometry = null;
+        while (feature.hasRemaining()) {
+            int tag = (int) readVarint(feature);
+            if ((tag & 7) == 0) {
+                readVarint(feature);
+            } else {
+                ByteBuffer data = readMessage(feature);
+                if ((tag >>> 3) == 4) {
+                    geometry = new int[3];
+                    for (int i = 0; i < 3; i++) {
+                        geometry[i] = (int) readVarint(data);
+                    }
+                }
+            }
+        }
+        return geometry;
+    }
+
+    private static ByteBuffer readMessage(ByteBuffer buffer) {
+        int length = (int) readVarint(buffer);
+        ByteBuffer message = buffer.slice(buffer.position(), length);
+        buffer.position(buffer.position() + length);
+        return message;
+    }
+
+    private static long readVarint(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,96 @@
+package nl.bertriksikken.spatial;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class GridIndexTest {
+
+    private record Point(double lat, double lon) {
+    }
+
+    /**
+     * Verifies that bounding box queries return the same points as a brute-force scan.
+     */
+    @Test
+    public void testQuery() {
+        Random random = new Random(1);
+        List<Point> points = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            points.add(new Point(50.7 + 3 * random.nextDouble(), 3.3 + 4 * random.nextDouble()));
+        }
+        GridIndex<Point> index = new GridIndex<>(points, Point::lat, Point::lon, 0.05);
+        assertEquals(points.size(), index.size());
+
+        for (int i = 0; i < 100; i++) {
+            double lat = 50 + 5 * random.nextDouble();
+            double lon = 3 + 5 * random.nextDouble();
+            BoundingBox bbox = new BoundingBox(lon, lat, lon + random.nextDouble(), lat + random.nextDouble());
+            Set<Point> expected = new HashSet<>();
+            for (Point point : points) {
+                if (bbox.contains(point.lat(), point.lon())) {
+                    expected.add(point);
+                }
+            }
+            List<Point> actual = index.query(bbox);
+            assertEquals(expected.size(), actual.size());
+            assertEquals(expected, new HashSet<>(actual));
+        }
+    }
+
+    /**
+     * Verifies that the nearest neighbours are the same as found by a brute-force search.
+     */
+    @Test
+    public void testNearest() {
+        Random random = new Random(2);
+        List<Point> points = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            points.add(new Point(50.7 + 3 * random.nextDouble(), 3.3 + 4 * random.nextDouble()));
+        }
+        GridIndex<Point> index = new GridIndex<>(points, Point::lat, Point::lon, 0.05);
+
+        for (int i = 0; i < 100; i++) {
+            // also outside the grid
+            double lat = 50 + 5 * random.nextDouble();
+            double lon = 3 + 5 * random.nextDouble();
+            int k = 1 + random.nextInt(20);
+            List<Point> expected = points.stream()
+                    .sorted(Comparator.comparingDouble(p -> GreatCircle.distance(lat, lon, p.lat(), p.lon())))
+                    .limit(k).toList();
+            List<Point> actual = index.nearest(lat, lon, k).stream().map(GridIndex.Neighbour::item).toList();
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void testDistance() {
+        // Utrecht Dom to Amsterdam Dam, about 35 km
+        double distance = GreatCircle.distance(52.0907, 5.1214, 52.3731, 4.8926);
+        assertEquals(34.9, distance / 1000, 0.5);
+    }
+
+    @Test
+    public void testEmpty() {
+        GridIndex<Point> index = new GridIndex<>(List.of(), Point::lat, Point::lon, 0.05);
+        assertTrue(index.query(new BoundingBox(3, 50, 8, 54)).isEmpty());
+        assertTrue(index.nearest(52, 5, 3).isEmpty());
+    }
+
+    @Test
+    public void testParse() {
+        assertEquals(new BoundingBox(4.8, 52.3, 5.0, 52.4), BoundingBox.parse("4.8,52.3,5.0,52.4"));
+        assertThrows(IllegalArgumentException.class, () -> BoundingBox.parse("4.8,52.3,5.0"));
+        assertThrows(IllegalArgumentException.class, () -> BoundingBox.parse("5.0,52.3,4.8,52.4"));
+    }
+
+}
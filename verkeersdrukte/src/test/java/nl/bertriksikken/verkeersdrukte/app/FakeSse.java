@@ -0,0 +1,106 @@
+package nl.bertriksikken.verkeersdrukte.app;
+
+import jakarta.ws.rs.sse.OutboundSseEvent;
+import jakarta.ws.rs.sse.Sse;
+import jakarta.ws.rs.sse.SseBroadcaster;
+import jakarta.ws.rs.sse.SseEventSink;
+import org.glassfish.jersey.media.sse.OutboundEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Server-sent events for tests, broadcasters deliver synchronously, sinks record what they were sent.
+ */
+final class FakeSse implements Sse {
+
+    @Override
+    public OutboundSseEvent.Builder newEventBuilder() {
+        return new OutboundEvent.Builder();
+    }
+
+    @Override
+    public SseBroadcaster newBroadcaster() {
+        return new Broadcaster();
+    }
+
+    static final class Sink implements SseEventSink {
+        private final List<OutboundSseEvent> events = new CopyOnWriteArrayList<>();
+        private volatile boolean closed;
+
+        @Override
+        public boolean isClosed() {
+            return closed;
+        }
+
+        @Override
+        public CompletionStage<?> send(OutboundSseEvent event) {
+            if (closed) {
+                throw new IllegalStateException("Sink is closed");
+            }
+            events.add(event);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+
+        List<String> ids() {
+            return events.stream().map(OutboundSseEvent::getId).toList();
+        }
+
+        List<String> data() {
+            return events.stream().map(event -> (String) event.getData()).toList();
+        }
+    }
+
+    private static final class Broadcaster implements SseBroadcaster {
+        private final List<SseEventSink> sinks = new CopyOnWriteArrayList<>();
+        private final List<Consumer<SseEventSink>> closeListeners = new ArrayList<>();
+        private final List<BiConsumer<SseEventSink, Throwable>> errorListeners = new ArrayList<>();
+
+        @Override
+        public void onError(BiConsumer<SseEventSink, Throwable> onError) {
+            errorListeners.add(onError);
+        }
+
+        @Override
+        public void onClose(Consumer<SseEventSink> onClose) {
+            closeListeners.add(onClose);
+        }
+
+        @Override
+        public void register(SseEventSink sink) {
+            sinks.add(sink);
+        }
+
+        @Override
+        public CompletionStage<?> broadcast(OutboundSseEvent event) {
+            List<SseEventSink> closed = sinks.stream().filter(SseEventSink::isClosed).toList();
+            sinks.removeAll(closed);
+            closed.forEach(sink -> closeListeners.forEach(listener -> listener.accept(sink)));
+            sinks.forEach(sink -> sink.send(event));
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public void close() {
+            close(true);
+        }
+
+        @Override
+        public void close(boolean cascading) {
+            if (cascading) {
+                sinks.forEach(SseEventSink::close);
+            }
+            sinks.clear();
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package nl.bertriksikken.verkeersdrukte.app;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class RenderedEntityTest {
+
+    @Test
+    public void testAcceptsGzip() {
+        assertTrue(RenderedEntity.acceptsGzip("gzip"));
+        assertTrue(RenderedEntity.acceptsGzip("deflate, gzip;q=0.5"));
+        assertTrue(RenderedEntity.acceptsGzip("br;q=1.0, *;q=0.1"));
+        assertTrue(RenderedEntity.acceptsGzip("GZIP"));
+
+        assertFalse(RenderedEntity.acceptsGzip(null));
+        assertFalse(RenderedEntity.acceptsGzip("identity"));
+        assertFalse(RenderedEntity.acceptsGzip("gzip;q=0"));
+        assertFalse(RenderedEntity.acceptsGzip("gzip; q=0.000, identity"));
+        assertFalse(RenderedEntity.acceptsGzip("*;q=1, gzip;q=0"));
+        assertFalse(RenderedEntity.acceptsGzip("*;q=0"));
+    }
+
+}
@@ -0,0 +1,97 @@
+package nl.bertriksikken.verkeersdrukte.app;
+
+import nl.bertriksikken.verkeersdrukte.traffic.FakeTrafficHandler;
+import nl.bertriksikken.verkeersdrukte.traffic.SiteMeasurement;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public final class SseLocationBroadcasterTest {
+
+    private final FakeTrafficHandler handler = new FakeTrafficHandler();
+    private final FakeSse sse = new FakeSse();
+    private final SseLocationBroadcaster broadcaster =
+            new SseLocationBroadcaster(handler, measurement -> measurement.getDateTime().toString());
+    private final Instant start = Instant.now().truncatedTo(ChronoUnit.MINUTES).minus(Duration.ofMinutes(10));
+
+    /**
+     * Verifies that a client subscribing between publication and notification gets the measurement only once.
+     */
+    @Test
+    public void testNoDuplicateOnSubscribe() {
+        handler.put("loc", measurement(0));
+        FakeSse.Sink sink = new FakeSse.Sink();
+        broadcaster.subscribe(sse, sink, "loc", null);
+        handler.notifyChanges();
+
+        assertEquals(List.of(time(0)), sink.data());
+    }
+
+    /**
+     * Verifies that a new client does not make the existing clients miss a measurement that was not sent yet.
+     */
+    @Test
+    public void testExistingClientsGetLatest() {
+        handler.put("loc", measurement(0));
+        FakeSse.Sink first = new FakeSse.Sink();
+        broadcaster.subscribe(sse, first, "loc", null);
+
+        handler.put("loc", measurement(1));
+        FakeSse.Sink second = new FakeSse.Sink();
+        broadcaster.subscribe(sse, second, "loc", null);
+        handler.notifyChanges();
+
+        assertEquals(List.of(time(0), time(1)), first.data());
+        assertEquals(List.of(time(1)), second.data());
+        assertEquals(2, broadcaster.getClientCount());
+    }
+
+    /**
+     * Verifies that a new measurement is sent also when its values are the same as the previous one.
+     */
+    @Test
+    public void testRepeatedValues() {
+        FakeSse.Sink sink = new FakeSse.Sink();
+        broadcaster.subscribe(sse, sink, "loc", null);
+        for (int i = 0; i < 2; i++) {
+            SiteMeasurement measurement = new SiteMeasurement(start.plus(Duration.ofMinutes(i)));
+            measurement.addLaneMeasurement("lane1", 0, Double.NaN);
+            handler.put("loc", measurement);
+            handler.notifyChanges();
+        }
+
+        assertEquals(List.of(time(0), time(1)), sink.data());
+    }
+
+    /**
+     * Verifies that a reconnecting client gets the measurements after its last event id from the history.
+     */
+    @Test
+    public void testCatchUp() {
+        for (int i = 0; i < 3; i++) {
+            handler.put("loc", measurement(i));
+            handler.notifyChanges();
+        }
+        FakeSse.Sink sink = new FakeSse.Sink();
+        long lastEventId = start.getEpochSecond() / 60;
+        broadcaster.subscribe(sse, sink, "loc", lastEventId);
+
+        assertEquals(List.of(time(1), time(2)), sink.data());
+        assertEquals(List.of(String.valueOf(lastEventId + 1), String.valueOf(lastEventId + 2)), sink.ids());
+    }
+
+    private SiteMeasurement measurement(int minutes) {
+        SiteMeasurement measurement = new SiteMeasurement(start.plus(Duration.ofMinutes(minutes)));
+        measurement.addLaneMeasurement("lane1", 60 * minutes, 100);
+        return measurement;
+    }
+
+    private String time(int minutes) {
+        return start.plus(Duration.ofMinutes(minutes)).toString();
+    }
+}
@@ -0,0 +1,92 @@
+package nl.bertriksikken.verkeersdrukte.app;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import nl.bertriksikken.verkeersdrukte.traffic.FakeTrafficHandler;
+import nl.bertriksikken.verkeersdrukte.traffic.SiteMeasurement;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public final class SseStreamBroadcasterTest {
+
+    private final FakeTrafficHandler handler = new FakeTrafficHandler();
+    private final FakeSse sse = new FakeSse();
+    private final SseStreamBroadcaster broadcaster =
+            new SseStreamBroadcaster(handler, measurement -> String.valueOf(measurement.getLanes().get(0).flow()));
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Instant now = Instant.now().truncatedTo(ChronoUnit.MINUTES);
+
+    /**
+     * Verifies that a new stream gets the current data of its set once, and then only the changes.
+     */
+    @Test
+    public void testSubscribeAndUpdate() throws JsonProcessingException {
+        handler.put("a", measurement(1));
+        handler.put("b", measurement(2));
+        handler.put("c", measurement(3));
+        FakeSse.Sink sink = new FakeSse.Sink();
+        broadcaster.subscribe(sse, sink, Set.of("a", "b"), null);
+        long first = handler.getSnapshot().version();
+        // the cycle that published the data above notifies after the subscription
+        handler.notifyChanges();
+
+        handler.put("a", measurement(10));
+        handler.put("c", measurement(30));
+        handler.notifyChanges();
+
+        long second = handler.getSnapshot().version();
+        assertEquals(List.of(String.valueOf(first), String.valueOf(second)), sink.ids());
+        // the order of the sites within an event is not defined
+        assertEquals(mapper.readTree("{\"version\":" + first + ",\"sites\":{\"a\":1.0,\"b\":2.0}}"),
+                mapper.readTree(sink.data().get(0)));
+        assertEquals("{\"version\":" + second + ",\"sites\":{\"a\":10.0}}", sink.data().get(1));
+    }
+
+    /**
+     * Verifies that a reconnecting client only gets the changes since its last event id.
+     */
+    @Test
+    public void testLastEventId() {
+        handler.put("a", measurement(1));
+        handler.put("b", measurement(2));
+        handler.notifyChanges();
+        long lastEventId = handler.getSnapshot().version();
+        handler.put("b", measurement(20));
+        handler.notifyChanges();
+
+        FakeSse.Sink sink = new FakeSse.Sink();
+        broadcaster.subscribe(sse, sink, Set.of("a", "b"), lastEventId);
+
+        long version = handler.getSnapshot().version();
+        assertEquals(List.of("{\"version\":" + version + ",\"sites\":{\"b\":20.0}}"), sink.data());
+    }
+
+    /**
+     * Verifies that a stream whose client went away is dropped without disturbing the notification.
+     */
+    @Test
+    public void testClosed() {
+        handler.put("a", measurement(1));
+        FakeSse.Sink sink = new FakeSse.Sink();
+        broadcaster.subscribe(sse, sink, Set.of("a"), null);
+        assertEquals(1, broadcaster.getStreamCount());
+
+        sink.close();
+        handler.put("a", measurement(2));
+        handler.notifyChanges();
+        assertEquals(0, broadcaster.getStreamCount());
+        assertEquals(1, sink.data().size());
+    }
+
+    private SiteMeasurement measurement(int flow) {
+        SiteMeasurement measurement = new SiteMeasurement(now);
+        measurement.addLaneMeasurement("lane1", flow, 100);
+        return measurement;
+    }
+}
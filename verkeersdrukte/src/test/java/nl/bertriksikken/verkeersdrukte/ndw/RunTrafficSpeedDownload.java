@@ -12,9 +12,9 @@ public final class RunTrafficSpeedDownload {
 
         NdwConfig ndwConfig = new NdwConfig();
         try (NdwClient ndwClient = NdwClient.create(ndwConfig)) {
-            FileResponse response = ndwClient.getTrafficSpeed();
             try (FileOutputStream outputStream = new FileOutputStream(destination)) {
-                outputStream.write(response.getContents());
+                FileResponse response = ndwClient.getTrafficSpeed("", null, in -> in.transferTo(outputStream));
+                System.out.println("response = " + response);
             }
         }
     }
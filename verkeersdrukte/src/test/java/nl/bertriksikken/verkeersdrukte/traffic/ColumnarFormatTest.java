@@ -0,0 +1,120 @@
+package nl.bertriksikken.verkeersdrukte.traffic;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class ColumnarFormatTest {
+
+    @Test
+    public void testEncode() {
+        MeasurementCache cache = new MeasurementCache(Duration.ofMinutes(60));
+        Instant time = Instant.parse("2025-08-15T21:48:00Z");
+        SiteMeasurement measurement = new SiteMeasurement(time);
+        measurement.addLaneMeasurement("lane1", 600, 87.5);
+        measurement.addLaneMeasurement("lane2", 0, Double.NaN);
+        TrafficSnapshot.Builder builder = cache.update();
+        builder.put("site", measurement);
+        cache.publish(builder);
+        TrafficSnapshot snapshot = cache.snapshot();
+
+        ByteBuffer bb = ByteBuffer.wrap(ColumnarFormat.encode(snapshot)).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals("VDC2", new String(new byte[]{bb.get(), bb.get(), bb.get(), bb.get()}, StandardCharsets.US_ASCII));
+        assertEquals(snapshot.version(), bb.getLong());
+        assertEquals(1, bb.getInt());
+        assertEquals(2, bb.getInt());
+        assertEquals("site", readString(bb));
+        assertEquals(time.toEpochMilli(), bb.getLong());
+        assertEquals(2, bb.get());
+        assertEquals(2, bb.getShort());
+        assertEquals("lane1", readString(bb));
+        assertEquals("lane2", readString(bb));
+        assertEquals(0, bb.getShort());
+        assertEquals(1, bb.getShort());
+        assertEquals(600.0f, bb.getFloat());
+        assertEquals(0.0f, bb.getFloat());
+        assertEquals(87.5f, bb.getFloat());
+        assertTrue(Float.isNaN(bb.getFloat()));
+        assertFalse(bb.hasRemaining());
+    }
+
+    /**
+     * Verifies that lane id indexes beyond 255 are encoded in full.
+     */
+    @Test
+    public void testManyLaneIds() {
+        MeasurementCache cache = new MeasurementCache(Duration.ofMinutes(60));
+        TrafficSnapshot.Builder builder = cache.update();
+        for (int i = 0; i < 300; i++) {
+            SiteMeasurement measurement = new SiteMeasurement(Instant.now());
+            measurement.addLaneMeasurement("lane" + i, i, 100);
+            builder.put("site" + i, measurement);
+        }
+        cache.publish(builder);
+
+        ByteBuffer bb = ByteBuffer.wrap(ColumnarFormat.encode(cache.snapshot())).order(ByteOrder.LITTLE_ENDIAN);
+        bb.position(12);
+        int sites = bb.getInt();
+        int lanes = bb.getInt();
+        for (int i = 0; i < sites; i++) {
+            readString(bb);
+        }
+        bb.position(bb.position() + 9 * sites);
+        assertEquals(300, bb.getShort());
+        for (int i = 0; i < 300; i++) {
+            readString(bb);
+        }
+        for (int i = 0; i < lanes; i++) {
+            assertEquals(i, bb.getShort());
+        }
+    }
+
+    /**
+     * Verifies that as many lane ids as their uint16 count can hold are accepted, and one more is refused.
+     */
+    @Test
+    public void testMaxLaneIds() {
+        MeasurementCache cache = new MeasurementCache(Duration.ofMinutes(60));
+        TrafficSnapshot.Builder builder = cache.update();
+        for (int i = 0; i < 0xFFFF; i++) {
+            SiteMeasurement measurement = new SiteMeasurement(Instant.now());
+            measurement.addLaneMeasurement("lane" + i, i, 100);
+            builder.put("site" + i, measurement);
+        }
+        cache.publish(builder);
+
+        ByteBuffer bb = ByteBuffer.wrap(ColumnarFormat.encode(cache.snapshot())).order(ByteOrder.LITTLE_ENDIAN);
+        bb.position(12);
+        int sites = bb.getInt();
+        bb.getInt();
+        for (int i = 0; i < sites; i++) {
+            readString(bb);
+        }
+        bb.position(bb.position() + 9 * sites);
+        assertEquals(0xFFFF, Short.toUnsignedInt(bb.getShort()));
+
+        builder = cache.update();
+        SiteMeasurement measurement = new SiteMeasurement(Instant.now());
+        measurement.addLaneMeasurement("one too many", 0, 100);
+        builder.put("last", measurement);
+        cache.publish(builder);
+        TrafficSnapshot snapshot = cache.snapshot();
+        assertThrows(IllegalStateException.class, () -> ColumnarFormat.encode(snapshot));
+    }
+
+    private static String readString(ByteBuffer bb) {
+        byte[] bytes = new byte[bb.getShort()];
+        bb.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+}
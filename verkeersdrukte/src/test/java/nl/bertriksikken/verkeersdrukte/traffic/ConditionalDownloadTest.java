@@ -0,0 +1,102 @@
+package nl.bertriksikken.verkeersdrukte.traffic;
+
+import nl.bertriksikken.verkeersdrukte.ndw.FileResponse;
+import nl.bertriksikken.verkeersdrukte.ndw.NdwClient.IStreamHandler;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class ConditionalDownloadTest {
+
+    private static final String LAST_MODIFIED = "Sat, 18 Oct 2025 12:00:00 GMT";
+
+    @Test
+    public void testConditional() {
+        Deque<Response> responses = new ArrayDeque<>();
+        List<String> requests = new ArrayList<>();
+        ConditionalDownload download = new ConditionalDownload("test", (etag, lastModified, handler) -> {
+            requests.add(etag + "/" + lastModified);
+            return responses.removeFirst().send(handler);
+        });
+
+        // first download has no validators, the body is parsed while it comes in
+        responses.add(ok("\"1\"", "data"));
+        assertEquals("data", download.fetch(ConditionalDownloadTest::parse));
+        assertEquals("/null", requests.get(0));
+        // the next publication is expected within a minute
+        Instant next = download.nextUpdate();
+        assertTrue(next.isAfter(Instant.now()));
+        assertTrue(next.isBefore(Instant.now().plusSeconds(61)));
+
+        // then the validators of the previous download are sent, not modified is not passed on
+        responses.add(new Response(304, Map.of(), ""));
+        assertNull(download.fetch(ConditionalDownloadTest::parse));
+        assertEquals("\"1\"/2025-10-18T12:00:00Z", requests.get(1));
+
+        // same contents with a different e-tag is not passed on either
+        responses.add(ok("\"2\"", "data"));
+        assertNull(download.fetch(ConditionalDownloadTest::parse));
+
+        responses.add(ok("\"3\"", "other data"));
+        assertEquals("other data", download.fetch(ConditionalDownloadTest::parse));
+
+        // the whole body counts, also when the parser does not read all of it
+        responses.add(ok("\"4\"", "other data, more"));
+        assertNotNull(download.fetch(stream -> new String(stream.readNBytes(5), StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void testFailed() {
+        ConditionalDownload download = new ConditionalDownload("test",
+                (etag, lastModified, handler) -> FileResponse.create(500, Map.of()));
+        assertNull(download.fetch(ConditionalDownloadTest::parse));
+        assertRetry(download);
+    }
+
+    @Test
+    public void testParseFailed() {
+        ConditionalDownload download = new ConditionalDownload("test",
+                (etag, lastModified, handler) -> ok("\"1\"", "data").send(handler));
+        assertNull(download.fetch(stream -> {
+            throw new IllegalArgumentException("bad data");
+        }));
+        assertRetry(download);
+    }
+
+    private static void assertRetry(ConditionalDownload download) {
+        long seconds = download.nextUpdate().getEpochSecond() - Instant.now().getEpochSecond();
+        assertTrue(seconds >= 13 && seconds <= 15);
+    }
+
+    private static String parse(InputStream stream) throws IOException {
+        return new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+    }
+
+    private static Response ok(String etag, String contents) {
+        return new Response(200, Map.of("ETag", List.of(etag), "Last-Modified", List.of(LAST_MODIFIED)), contents);
+    }
+
+    // streams the body to the handler like the NDW client does for a successful response
+    private record Response(int code, Map<String, List<String>> headers, String body) {
+        FileResponse send(IStreamHandler handler) throws IOException {
+            if (code == 200) {
+                handler.handle(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+            }
+            return FileResponse.create(code, headers);
+        }
+    }
+}
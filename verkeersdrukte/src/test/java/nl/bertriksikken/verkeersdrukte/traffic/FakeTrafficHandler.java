@@ -0,0 +1,108 @@
+package nl.bertriksikken.verkeersdrukte.traffic;
+
+import nl.bertriksikken.datex2v3.VmsController;
+import nl.bertriksikken.datex2v3.VmsPayload;
+import nl.bertriksikken.geojson.FeatureCollection;
+import nl.bertriksikken.spatial.BoundingBox;
+import nl.bertriksikken.spatial.GridIndex.Neighbour;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Traffic handler for tests of its clients, with the real measurement cache, history and subscriptions, but without
+ * any downloads. Measurements are put directly, subscribers are notified on request.
+ */
+public final class FakeTrafficHandler implements ITrafficHandler {
+
+    private final MeasurementCache cache = new MeasurementCache(Duration.ofMinutes(60));
+    private final MeasurementHistory history = new MeasurementHistory(15);
+    private final SubscriptionRegistry subscriptions = new SubscriptionRegistry();
+    private long notifiedVersion = cache.snapshot().version();
+
+    /**
+     * Puts a measurement, without notifying anyone.
+     */
+    public void put(String location, SiteMeasurement measurement) {
+        cache.put(location, measurement);
+    }
+
+    /**
+     * Notifies the subscribers of the sites that changed since the previous notification, like an ingest cycle.
+     */
+    public void notifyChanges() {
+        TrafficSnapshot snapshot = cache.snapshot();
+        // a new measurement with the same values is still news to a subscriber of that site, and for its history
+        Set<String> measured = snapshot.measuredSince(notifiedVersion);
+        history.record(snapshot, measured);
+        subscriptions.notify(ETopic.TRAFFIC_SPEED, measured);
+        notifiedVersion = snapshot.version();
+    }
+
+    @Override
+    public boolean isHealthy() {
+        return true;
+    }
+
+    @Override
+    public SiteMeasurement getDynamicData(String location) {
+        return cache.get(location);
+    }
+
+    @Override
+    public List<SiteMeasurement> getDynamicHistory(String location, Instant after) {
+        return history.getMeasurements(location, after);
+    }
+
+    @Override
+    public TrafficSnapshot getSnapshot() {
+        return cache.snapshot();
+    }
+
+    @Override
+    public FeatureCollection getStaticData() {
+        return new FeatureCollection();
+    }
+
+    @Override
+    public FeatureCollection.Feature getStaticData(String location) {
+        return null;
+    }
+
+    @Override
+    public List<FeatureCollection.Feature> getStaticData(BoundingBox bbox) {
+        return List.of();
+    }
+
+    @Override
+    public List<Neighbour<FeatureCollection.Feature>> findNearestSites(double lat, double lon, int k) {
+        return List.of();
+    }
+
+    @Override
+    public VmsPayload getVmsPayload() {
+        return null;
+    }
+
+    @Override
+    public List<Neighbour<VmsController>> findNearestDrips(double lat, double lon, int k) {
+        return List.of();
+    }
+
+    @Override
+    public List<VmsController> getDrips(BoundingBox bbox) {
+        return List.of();
+    }
+
+    @Override
+    public void subscribe(String clientId, ETopic topic, String location, INotifyData callback) {
+        subscriptions.subscribe(clientId, topic, location, callback);
+    }
+
+    @Override
+    public void unsubscribe(String clientId) {
+        subscriptions.unsubscribe(clientId);
+    }
+}
@@ -0,0 +1,76 @@
+package nl.bertriksikken.verkeersdrukte.traffic;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class FeedPipelineTest {
+
+    @Test
+    public void testStages() throws InterruptedException {
+        BlockingQueue<String> results = new LinkedBlockingQueue<>();
+        FeedPipeline<Integer> pipeline = FeedPipeline.<Integer>builder("test", Thread.ofPlatform().daemon(), 2)
+                .then("double", i -> i * 2)
+                // odd items are dropped
+                .then("filter", i -> (i % 4 == 0) ? i : null)
+                .build("collect", i -> results.add("item" + i));
+        pipeline.start();
+        try {
+            assertTrue(pipeline.offer(1));
+            assertTrue(pipeline.offer(2));
+            assertEquals("item4", results.poll(5, TimeUnit.SECONDS));
+            assertNull(results.poll(100, TimeUnit.MILLISECONDS));
+            assertTrue(pipeline.isRunning());
+        } finally {
+            pipeline.close();
+        }
+    }
+
+    @Test
+    public void testStageThrows() throws InterruptedException {
+        BlockingQueue<String> results = new LinkedBlockingQueue<>();
+        FeedPipeline<Integer> pipeline = FeedPipeline.<Integer>builder("test", Thread.ofPlatform().daemon(), 1)
+                .then("divide", i -> 12 / i)
+                .build("collect", i -> results.add("item" + i));
+        pipeline.start();
+        try {
+            assertTrue(pipeline.offer(0));
+            assertTrue(offerWithin(pipeline, 3));
+            assertEquals("item4", results.poll(5, TimeUnit.SECONDS));
+            assertTrue(pipeline.isRunning());
+        } finally {
+            pipeline.close();
+        }
+    }
+
+    // the first stage may still be busy with the previous item
+    private static boolean offerWithin(FeedPipeline<Integer> pipeline, int item) throws InterruptedException {
+        for (int i = 0; i < 50; i++) {
+            if (pipeline.offer(item)) {
+                return true;
+            }
+            Thread.sleep(100);
+        }
+        return false;
+    }
+
+    @Test
+    public void testStopped()throws InterruptedException {
+        FeedPipeline<Integer> pipeline = FeedPipeline.<Integer>builder("test", Thread.ofPlatform().daemon(), 1)
+                .build("ignore", i -> {
+                });
+        pipeline.start();
+        pipeline.close();
+        for (int i = 0; i < 50 && pipeline.isRunning(); i++) {
+            Thread.sleep(100);
+        }
+        assertFalse(pipeline.isRunning());
+    }
+}
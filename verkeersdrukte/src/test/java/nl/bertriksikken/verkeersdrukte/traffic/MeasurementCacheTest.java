@@ -0,0 +1,204 @@
+package nl.bertriksikken.verkeersdrukte.traffic;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class MeasurementCacheTest {
+
+    @TempDir
+    File tempDir;
+
+    @Test
+    public void testSaveRestore() throws IOException {
+        Instant now = Instant.now();
+        MeasurementCache cache = new MeasurementCache(Duration.ofMinutes(60));
+        SiteMeasurement fresh = new SiteMeasurement(now.minusSeconds(120));
+        fresh.addLaneMeasurement("lane1", 600, 100.0);
+        fresh.addLaneMeasurement("lane2", 0, Double.NaN);
+        cache.put("fresh", fresh);
+        cache.put("old", new SiteMeasurement(now.minus(Duration.ofMinutes(61))));
+
+        File file = new File(tempDir, "measurements.bin");
+        cache.save(file);
+
+        MeasurementCache restored = new MeasurementCache(Duration.ofMinutes(60));
+        assertEquals(1, restored.restore(file, now));
+        assertNull(restored.get("old"));
+        SiteMeasurement measurement = restored.get("fresh");
+        assertEquals(fresh.getDateTime().toEpochMilli(), measurement.getDateTime().toEpochMilli());
+        assertEquals(fresh.getLanes(), measurement.getLanes());
+    }
+
+    /**
+     * Verifies that a restored measurement expires relative to its measurement time, not the time of the restore.
+     */
+    @Test
+    public void testRestoreExpiry() throws IOException {
+        Instant now = Instant.now();
+        MeasurementCache cache = new MeasurementCache(Duration.ofMinutes(60));
+        cache.put("site", new SiteMeasurement(now.minus(Duration.ofMinutes(61))));
+        File file = new File(tempDir, "measurements.bin");
+        cache.save(file);
+
+        // still valid at the (earlier) restore time, but expired by now
+        MeasurementCache restored = new MeasurementCache(Duration.ofMinutes(60));
+        assertEquals(1, restored.restore(file, now.minus(Duration.ofMinutes(2))));
+        assertNull(restored.get("site"));
+    }
+
+    @Test
+    public void testPutGet() {
+        MeasurementCache cache = new MeasurementCache(Duration.ofMinutes(60));
+        Instant now = Instant.parse("2025-08-15T21:48:00Z");
+        SiteMeasurement one = new SiteMeasurement(now);
+        one.addLaneMeasurement("lane1", 600, 87.5);
+        cache.put("site", one);
+        cache.put("other", new SiteMeasurement(now));
+
+        // more lanes than before, needs new lane slots
+        SiteMeasurement two = new SiteMeasurement(now.plusSeconds(60));
+        two.addLaneMeasurement("lane1", 600, 87.5);
+        two.addLaneMeasurement("lane2", 0, Double.NaN);
+        cache.put("site", two);
+
+        assertEquals(2, cache.size());
+        assertEquals(two.getDateTime(), cache.get("site").getDateTime());
+        assertEquals(two.getLanes(), cache.get("site").getLanes());
+        assertTrue(cache.get("other").getLanes().isEmpty());
+        assertNull(cache.get("unknown"));
+    }
+
+    @Test
+    public void testExpiry() {
+        MeasurementCache cache = new MeasurementCache(Duration.ZERO);
+        cache.put("site", new SiteMeasurement(Instant.now()));
+        assertNull(cache.get("site"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testNextExpiry() {
+        MeasurementCache cache = new MeasurementCache(Duration.ofMinutes(60));
+        Instant before = Instant.now();
+        cache.put("site", new SiteMeasurement(before));
+        Instant after = Instant.now();
+
+        Instant expiry = cache.snapshot().nextExpiry(after);
+        assertNotNull(expiry);
+        assertFalse(expiry.isBefore(before.plus(Duration.ofMinutes(60)).truncatedTo(ChronoUnit.MILLIS)));
+        assertFalse(expiry.isAfter(after.plus(Duration.ofMinutes(60))));
+        assertNull(cache.snapshot().nextExpiry(expiry));
+    }
+
+    @Test
+    public void testChangedSinceExpired() throws InterruptedException {
+        MeasurementCache cache = new MeasurementCache(Duration.ofMillis(500));
+        cache.put("site", new SiteMeasurement(Instant.now()));
+        long version = cache.snapshot().version();
+
+        // expiry is a change, reported once
+        Thread.sleep(600);
+        cache.publish(cache.update());
+        assertEquals(Set.of("site"), cache.snapshot().changedSince(version));
+        assertNull(cache.snapshot().getMeasurement("site"));
+        version = cache.snapshot().version();
+        cache.publish(cache.update());
+        assertEquals(Set.of(), cache.snapshot().changedSince(version));
+    }
+
+    @Test
+    public void testSnapshotIsolation() {
+        MeasurementCache cache = new MeasurementCache(Duration.ofMinutes(60));
+        TrafficSnapshot before = cache.snapshot();
+
+        TrafficSnapshot.Builder builder = cache.update();
+        builder.put("site", new SiteMeasurement(Instant.now()));
+        // not visible until published
+        assertNull(cache.get("site"));
+        cache.publish(builder);
+
+        TrafficSnapshot after = cache.snapshot();
+        assertEquals(before.version() + 1, after.version());
+        assertNull(before.getMeasurement("site"));
+        assertNotNull(after.getMeasurement("site"));
+    }
+
+    @Test
+    public void testChangedSince() {
+        MeasurementCache cache = new MeasurementCache(Duration.ofMinutes(60));
+        Instant now = Instant.now();
+        SiteMeasurement one = new SiteMeasurement(now);
+        one.addLaneMeasurement("lane1", 600, 87.5);
+        SiteMeasurement two = new SiteMeasurement(now);
+        two.addLaneMeasurement("lane1", 660, 87.5);
+
+        TrafficSnapshot.Builder builder = cache.update();
+        builder.put("a", one);
+        builder.put("b", one);
+        cache.publish(builder);
+        long first = cache.snapshot().version();
+
+        // same values for a, different for b
+        builder = cache.update();
+        builder.put("a", one);
+        builder.put("b", two);
+        cache.publish(builder);
+
+        TrafficSnapshot snapshot = cache.snapshot();
+        assertEquals(Set.of("b"), snapshot.changedSince(first));
+        assertEquals(Set.of("a", "b"), snapshot.changedSince(first - 1));
+        assertEquals(Set.of(), snapshot.changedSince(snapshot.version()));
+        assertNull(snapshot.changedSince(snapshot.version() + 1));
+
+        // old versions fall out of the ring
+        for (int i = 0; i < TrafficSnapshot.MAX_CHANGE_SETS; i++) {
+            cache.publish(cache.update());
+        }
+        assertNull(cache.snapshot().changedSince(first));
+    }
+
+    /**
+     * Verifies that a new measurement with the same values is not a change, but is a new measurement.
+     */
+    @Test
+    public void testMeasuredSince() {
+        MeasurementCache cache = new MeasurementCache(Duration.ofMinutes(60));
+        Instant now = Instant.now().truncatedTo(ChronoUnit.MINUTES);
+        cache.put("a", quiet(now.minusSeconds(60)));
+        cache.put("b", quiet(now.minusSeconds(60)));
+        long first = cache.snapshot().version();
+
+        // a is measured again with the same values, b is not measured again
+        TrafficSnapshot.Builder builder = cache.update();
+        builder.put("a", quiet(now));
+        builder.put("b", quiet(now.minusSeconds(60)));
+        cache.publish(builder);
+
+        TrafficSnapshot snapshot = cache.snapshot();
+        assertEquals(Set.of(), snapshot.changedSince(first));
+        assertEquals(Set.of("a"), snapshot.measuredSince(first));
+        assertEquals(Set.of("a", "b"), snapshot.measuredSince(first - 1));
+        assertEquals(Set.of(), snapshot.measuredSince(snapshot.version()));
+        assertNull(snapshot.measuredSince(snapshot.version() + 1));
+    }
+
+    // no traffic, like at night
+    private static SiteMeasurement quiet(Instant time) {
+        SiteMeasurement measurement = new SiteMeasurement(time);
+        measurement.addLaneMeasurement("lane1", 0, Double.NaN);
+        return measurement;
+    }
+}
@@ -0,0 +1,97 @@
+package nl.bertriksikken.verkeersdrukte.traffic;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public final class MeasurementHistoryTest {
+
+    @Test
+    public void testRing() {
+        MeasurementCache cache = new MeasurementCache(Duration.ofMinutes(60));
+        MeasurementHistory history = new MeasurementHistory(3);
+        Instant start = Instant.now().truncatedTo(ChronoUnit.SECONDS).minus(Duration.ofMinutes(10));
+        for (int i = 0; i < 5; i++) {
+            SiteMeasurement measurement = new SiteMeasurement(start.plus(Duration.ofMinutes(i)));
+            measurement.addLaneMeasurement("lane1", i, 100);
+            long version = cache.snapshot().version();
+            cache.put("site", measurement);
+            history.record(cache.snapshot(), cache.snapshot().measuredSince(version));
+        }
+
+        // only the last 3 are kept, oldest first
+        List<SiteMeasurement> all = history.getMeasurements("site", Instant.EPOCH);
+        assertEquals(3, all.size());
+        assertEquals(start.plus(Duration.ofMinutes(2)), all.get(0).getDateTime());
+        assertEquals(4.0, all.get(2).getLanes().get(0).flow());
+        assertEquals(100.0, all.get(2).getLanes().get(0).speed());
+
+        List<SiteMeasurement> missed = history.getMeasurements("site", start.plus(Duration.ofMinutes(3)));
+        assertEquals(1, missed.size());
+        assertEquals(start.plus(Duration.ofMinutes(4)), missed.get(0).getDateTime());
+
+        assertEquals(List.of(), history.getMeasurements("unknown", Instant.EPOCH));
+    }
+
+    @Test
+    public void testLanesChanged() {
+        MeasurementCache cache = new MeasurementCache(Duration.ofMinutes(60));
+        MeasurementHistory history = new MeasurementHistory(3);
+        Instant now = Instant.now();
+        SiteMeasurement first = new SiteMeasurement(now.minusSeconds(60));
+        first.addLaneMeasurement("lane1", 1, 100);
+        cache.put("site", first);
+        history.record(cache.snapshot(), null);
+
+        SiteMeasurement second = new SiteMeasurement(now);
+        second.addLaneMeasurement("lane2", 2, 90);
+        cache.put("site", second);
+        history.record(cache.snapshot(), null);
+
+        List<SiteMeasurement> all = history.getMeasurements("site", Instant.EPOCH);
+        assertEquals(1, all.size());
+        assertEquals("lane2", all.get(0).getLanes().get(0).id());
+    }
+
+    /**
+     * Verifies that every new measurement is recorded, also when its values are the same as the previous one.
+     */
+    @Test
+    public void testRepeatedValues() {
+        MeasurementCache cache = new MeasurementCache(Duration.ofMinutes(60));
+        MeasurementHistory history = new MeasurementHistory(3);
+        Instant start = Instant.now().truncatedTo(ChronoUnit.SECONDS).minus(Duration.ofMinutes(10));
+        for (int i = 0; i < 3; i++) {
+            SiteMeasurement measurement = new SiteMeasurement(start.plus(Duration.ofMinutes(i)));
+            measurement.addLaneMeasurement("lane1", 0, Double.NaN);
+            long version = cache.snapshot().version();
+            cache.put("site", measurement);
+            history.record(cache.snapshot(), cache.snapshot().measuredSince(version));
+        }
+
+        List<SiteMeasurement> missed = history.getMeasurements("site", start);
+        assertEquals(2, missed.size());
+        assertEquals(start.plus(Duration.ofMinutes(2)), missed.get(1).getDateTime());
+    }
+
+    @Test
+    public void testExpired() throws InterruptedException {
+        MeasurementCache cache = new MeasurementCache(Duration.ofMillis(500));
+        MeasurementHistory history = new MeasurementHistory(3);
+        cache.put("site", new SiteMeasurement(Instant.now()));
+        history.record(cache.snapshot(), null);
+        assertEquals(1, history.getMeasurements("site", Instant.EPOCH).size());
+
+        // the next cycle reports the expired site as changed, its history is dropped
+        Thread.sleep(600);
+        long version = cache.snapshot().version();
+        cache.publish(cache.update());
+        history.record(cache.snapshot(), cache.snapshot().measuredSince(version));
+        assertEquals(List.of(), history.getMeasurements("site", Instant.EPOCH));
+    }
+}
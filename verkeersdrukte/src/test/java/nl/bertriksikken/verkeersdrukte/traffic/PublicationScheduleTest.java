@@ -0,0 +1,73 @@
+package nl.bertriksikken.verkeersdrukte.traffic;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public final class PublicationScheduleTest {
+
+    private static final Instant START = Instant.parse("2025-10-18T12:00:00Z");
+
+    @Test
+    public void testLearnCadence() {
+        PublicationSchedule schedule = new PublicationSchedule();
+        assertEquals(START.plus(PublicationSchedule.DEFAULT_INTERVAL), schedule.nextPoll(START));
+
+        // published every 30 seconds, available 6 to 10 seconds later
+        for (int i = 0; i < 5; i++) {
+            Instant lastModified = START.plusSeconds(30L * i);
+            schedule.published(lastModified, lastModified.plusSeconds(6 + i));
+        }
+        assertEquals(Duration.ofSeconds(30), schedule.interval());
+        // each publication that was there at the first try moves the delay a step earlier
+        assertEquals(Duration.ofSeconds(1), schedule.delay());
+
+        // poll just after the next predicted publication
+        Instant last = START.plusSeconds(120);
+        assertEquals(last.plusSeconds(31), schedule.nextPoll(last.plusSeconds(10)));
+    }
+
+    @Test
+    public void testBackOff() {
+        PublicationSchedule schedule = new PublicationSchedule();
+        schedule.published(START, START.plusSeconds(3));
+        schedule.published(START.plusSeconds(60), START.plusSeconds(62));
+        assertEquals(Duration.ofSeconds(1), schedule.delay());
+
+        // too early, it was still not there 4 seconds after its Last-Modified time
+        schedule.notModified(START.plusSeconds(121));
+        schedule.notModified(START.plusSeconds(124));
+        schedule.published(START.plusSeconds(120), START.plusSeconds(127));
+        assertEquals(Duration.ofSeconds(4), schedule.delay());
+
+        // and creeps earlier again
+        schedule.published(START.plusSeconds(180), START.plusSeconds(184));
+        assertEquals(Duration.ofSeconds(3), schedule.delay());
+    }
+
+    @Test
+    public void testLate() {
+        PublicationSchedule schedule = new PublicationSchedule();
+        schedule.published(START, START.plusSeconds(2));
+        schedule.published(START.plusSeconds(60), START.plusSeconds(62));
+        Instant expected = START.plusSeconds(120);
+
+        // probe shortly while the publication is late
+        Instant now = expected.plusSeconds(5);
+        assertEquals(now.plus(PublicationSchedule.PROBE_INTERVAL), schedule.nextPoll(now));
+
+        // give up on a publication that is very late, expect the one after
+        assertEquals(expected.plusSeconds(60), schedule.nextPoll(expected.plusSeconds(40)));
+    }
+
+    @Test
+    public void testIgnoreRepeated() {
+        PublicationSchedule schedule = new PublicationSchedule();
+        schedule.published(START, START.plusSeconds(2));
+        schedule.published(START, START.plusSeconds(30));
+        assertEquals(Duration.ofSeconds(1), schedule.delay());
+    }
+}
@@ -0,0 +1,66 @@
+package nl.bertriksikken.verkeersdrukte.traffic;
+
+import nl.bertriksikken.geojson.FeatureCollection;
+import nl.bertriksikken.geojson.FeatureCollection.Feature;
+import nl.bertriksikken.geojson.FeatureCollection.PointGeometry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class ReferenceDataTest {
+
+    @TempDir
+    File tempDir;
+
+    @Test
+    public void testSaveLoad() throws IOException {
+        FeatureCollection features = new FeatureCollection();
+        Feature feature = new Feature(new PointGeometry(52.1, 5.2));
+        feature.addProperty("dgl_loc", "RWS01_MONIBAS_0021hrl0414ra");
+        feature.addProperty("naam", "A2 Ütrecht");
+        features.add(feature);
+        SiteLanePlan plan = new SiteLanePlan(new String[]{"lane1", "lane2"}, new byte[]{-1, 0, 1, -2});
+        ReferenceData data = new ReferenceData("etag1", "etag2", features, Map.of("RWS01_MONIBAS_0021hrl0414ra", plan));
+
+        File file = new File(tempDir, "referencedata.bin");
+        data.save(file);
+        ReferenceData loaded = ReferenceData.load(file);
+
+        assertTrue(loaded.isBuiltFrom("etag1", "etag2"));
+        assertFalse(loaded.isBuiltFrom("etag1", "etag3"));
+        assertEquals(1, loaded.features().getFeatures().size());
+        Feature loadedFeature = loaded.features().getFeatures().get(0);
+        PointGeometry geometry = (PointGeometry) loadedFeature.getGeometry();
+        assertEquals(52.1, geometry.getLatitude());
+        assertEquals(5.2, geometry.getLongitude());
+        assertEquals(feature.getProperties(), loadedFeature.getProperties());
+        assertSame(loadedFeature, loaded.featureIndex().get("RWS01_MONIBAS_0021hrl0414ra"));
+
+        SiteLanePlan loadedPlan = loaded.lanePlans().get("RWS01_MONIBAS_0021hrl0414ra");
+        assertEquals(2, loadedPlan.laneCount());
+        assertEquals("lane2", loadedPlan.laneId(1));
+        assertArrayEquals(plan.slots(), loadedPlan.slots());
+    }
+
+    @Test
+    public void testCorrupt() throws IOException {
+        File file = new File(tempDir, "referencedata.bin");
+        ReferenceData.EMPTY.save(file);
+        byte[] data = Files.readAllBytes(file.toPath());
+        Files.write(file.toPath(), Arrays.copyOf(data, data.length - 2));
+        assertThrows(IOException.class, () -> ReferenceData.load(file));
+    }
+
+}
@@ -0,0 +1,72 @@
+package nl.bertriksikken.verkeersdrukte.traffic;
+
+import com.fasterxml.jackson.dataformat.xml.XmlFactory;
+import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import nl.bertriksikken.datex2.MeasurementSiteRecord;
+import nl.bertriksikken.datex2.MeasurementSiteRecord.MeasurementSpecificCharacteristicsElement;
+import nl.bertriksikken.datex2.MeasurementSiteRecord.SpecificVehicleCharacteristics;
+import org.junit.jupiter.api.Test;
+
+import javax.xml.stream.XMLInputFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public final class SiteLanePlanTest {
+
+    @Test
+    public void testCompileRecord() throws IOException {
+        InputStream is = getClass().getResourceAsStream("/MeasurementSiteRecord.xml");
+        XMLInputFactory xmlInputFactory = XMLInputFactory.newFactory();
+        xmlInputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+        XmlMapper xmlMapper = new XmlMapper(new XmlFactory(xmlInputFactory));
+        MeasurementSiteRecord record = xmlMapper.readValue(is, MeasurementSiteRecord.class);
+        SiteLanePlan plan = SiteLanePlan.compile(record);
+
+        assertEquals(1, plan.laneCount());
+        assertEquals("lane1", plan.laneId(0));
+        assertEquals(0, plan.slot(4));
+        assertEquals(0, plan.slot(8));
+        assertEquals(SiteLanePlan.IGNORE, plan.slot(1));
+        assertEquals(SiteLanePlan.UNKNOWN, plan.slot(0));
+        assertEquals(SiteLanePlan.UNKNOWN, plan.slot(100));
+    }
+
+    @Test
+    public void testLaneOrder() {
+        MeasurementSiteRecord record = new MeasurementSiteRecord("MSR");
+        SpecificVehicleCharacteristics anyVehicle = new SpecificVehicleCharacteristics("anyVehicle");
+        SpecificVehicleCharacteristics car = new SpecificVehicleCharacteristics("car");
+        record.addCharacteristic(new MeasurementSpecificCharacteristicsElement("lane2", "trafficFlow", anyVehicle));
+        record.addCharacteristic(new MeasurementSpecificCharacteristicsElement("lane1", "trafficFlow", anyVehicle));
+        record.addCharacteristic(new MeasurementSpecificCharacteristicsElement("lane1", "trafficFlow", car));
+        record.addCharacteristic(new MeasurementSpecificCharacteristicsElement("lane2", "trafficSpeed", anyVehicle));
+        SiteLanePlan plan = SiteLanePlan.compile(record);
+
+        assertEquals(2, plan.laneCount());
+        assertEquals(1, plan.slot(1));
+        assertEquals(0, plan.slot(2));
+        assertEquals(SiteLanePlan.IGNORE, plan.slot(3));
+        assertEquals(1, plan.slot(4));
+    }
+
+    @Test
+    public void testMaxLanes() {
+        MeasurementSiteRecord record = new MeasurementSiteRecord("MSR");
+        SpecificVehicleCharacteristics anyVehicle = new SpecificVehicleCharacteristics("anyVehicle");
+        // flow and speed for each lane, so each lane appears twice, in reverse order
+        for (int lane = SiteLanePlan.MAX_LANES + 10; lane > 0; lane--) {
+            String laneId = String.format(Locale.ROOT, "lane%03d", lane);
+            record.addCharacteristic(new MeasurementSpecificCharacteristicsElement(laneId, "trafficFlow", anyVehicle));
+            record.addCharacteristic(new MeasurementSpecificCharacteristicsElement(laneId, "trafficSpeed", anyVehicle));
+        }
+        SiteLanePlan plan = SiteLanePlan.compile(record);
+
+        assertEquals(SiteLanePlan.MAX_LANES, plan.laneCount());
+        assertEquals("lane001", plan.laneId(0));
+        assertEquals(String.format(Locale.ROOT, "lane%03d", SiteLanePlan.MAX_LANES), plan.laneId(SiteLanePlan.MAX_LANES - 1));
+    }
+
+}
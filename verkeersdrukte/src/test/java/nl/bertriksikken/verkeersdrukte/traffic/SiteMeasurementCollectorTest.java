@@ -0,0 +1,71 @@
+package nl.bertriksikken.verkeersdrukte.traffic;
+
+import nl.bertriksikken.datex2.IMeasuredValueSink.EValueType;
+import nl.bertriksikken.datex2.MeasurementSiteRecord;
+import nl.bertriksikken.datex2.MeasurementSiteRecord.MeasurementSpecificCharacteristicsElement;
+import nl.bertriksikken.datex2.MeasurementSiteRecord.SpecificVehicleCharacteristics;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class SiteMeasurementCollectorTest {
+
+    @Test
+    public void testCollect() {
+        MeasurementSiteRecord record = new MeasurementSiteRecord("MSR");
+        SpecificVehicleCharacteristics anyVehicle = new SpecificVehicleCharacteristics("anyVehicle");
+        record.addCharacteristic(new MeasurementSpecificCharacteristicsElement("lane2", "trafficFlow", anyVehicle));
+        record.addCharacteristic(new MeasurementSpecificCharacteristicsElement("lane1", "trafficFlow", anyVehicle));
+        record.addCharacteristic(new MeasurementSpecificCharacteristicsElement("lane2", "trafficSpeed", anyVehicle));
+        record.addCharacteristic(new MeasurementSpecificCharacteristicsElement("lane1", "trafficSpeed", anyVehicle));
+        MeasurementCache cache = new MeasurementCache(Duration.ofMinutes(60));
+        TrafficSnapshot.Builder builder = cache.update();
+        SiteMeasurementCollector collector = new SiteMeasurementCollector(Map.of("MSR", SiteLanePlan.compile(record)), builder);
+
+        Instant now = Instant.parse("2025-08-15T21:48:00Z");
+        collector.startSite("MSR", now);
+        collector.measuredValue(1, EValueType.FLOW, 600, false);
+        collector.measuredValue(2, EValueType.FLOW, 0, false);
+        collector.measuredValue(3, EValueType.SPEED, 100, false);
+        collector.measuredValue(4, EValueType.SPEED, 80, true);
+        collector.endSite();
+        cache.publish(builder);
+
+        SiteMeasurement measurement = cache.get("MSR");
+        assertEquals(now, measurement.getDateTime());
+        List<SiteMeasurement.LaneMeasurement> lanes = measurement.getLanes();
+        assertEquals(2, lanes.size());
+        // lane1 has no flow, so no speed
+        assertEquals("lane1", lanes.get(0).id());
+        assertEquals(0.0, lanes.get(0).flow());
+        assertTrue(Double.isNaN(lanes.get(0).speed()));
+        assertEquals("lane2", lanes.get(1).id());
+        assertEquals(600.0, lanes.get(1).flow());
+        assertEquals(100.0, lanes.get(1).speed());
+    }
+
+    @Test
+    public void testMissingSpeed() {
+        MeasurementSiteRecord record = new MeasurementSiteRecord("MSR");
+        SpecificVehicleCharacteristics anyVehicle = new SpecificVehicleCharacteristics("anyVehicle");
+        record.addCharacteristic(new MeasurementSpecificCharacteristicsElement("lane1", "trafficFlow", anyVehicle));
+        record.addCharacteristic(new MeasurementSpecificCharacteristicsElement("lane1", "trafficSpeed", anyVehicle));
+        MeasurementCache cache = new MeasurementCache(Duration.ofMinutes(60));
+        TrafficSnapshot.Builder builder = cache.update();
+        SiteMeasurementCollector collector = new SiteMeasurementCollector(Map.of("MSR", SiteLanePlan.compile(record)), builder);
+
+        collector.startSite("MSR", Instant.now());
+        collector.measuredValue(1, EValueType.FLOW, 600, false);
+        collector.endSite();
+        cache.publish(builder);
+
+        assertTrue(cache.get("MSR").getLanes().isEmpty());
+    }
+
+}
@@ -0,0 +1,58 @@
+package nl.bertriksikken.verkeersdrukte.traffic;
+
+import nl.bertriksikken.verkeersdrukte.traffic.ITrafficHandler.ETopic;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public final class SubscriptionRegistryTest {
+
+    @Test
+    public void testNotifyChanged() {
+        SubscriptionRegistry registry = new SubscriptionRegistry();
+        List<String> notified = new ArrayList<>();
+        registry.subscribe("a", ETopic.TRAFFIC_SPEED, "A", () -> notified.add("a"));
+        registry.subscribe("b", ETopic.TRAFFIC_SPEED, "B", () -> notified.add("b"));
+        registry.subscribe("any", ETopic.TRAFFIC_SPEED, null, () -> notified.add("any"));
+        registry.subscribe("vms", ETopic.VMS, null, () -> notified.add("vms"));
+
+        // only the subscribers of changed locations
+        registry.notify(ETopic.TRAFFIC_SPEED, Set.of("A", "C"));
+        assertEquals(List.of("any", "a"), notified);
+
+        // nothing changed, nobody notified
+        notified.clear();
+        registry.notify(ETopic.TRAFFIC_SPEED, Set.of());
+        assertEquals(List.of(), notified);
+
+        // unknown changes, everybody on the topic notified
+        notified.clear();
+        registry.notify(ETopic.TRAFFIC_SPEED, null);
+        assertEquals(Set.of("any", "a", "b"), Set.copyOf(notified));
+
+        notified.clear();
+        registry.notify(ETopic.VMS, null);
+        assertEquals(List.of("vms"), notified);
+    }
+
+    @Test
+    public void testUnsubscribe() {
+        SubscriptionRegistry registry = new SubscriptionRegistry();
+        List<String> notified = new ArrayList<>();
+        registry.subscribe("a", ETopic.TRAFFIC_SPEED, "A", () -> notified.add("a"));
+        registry.subscribe("a", ETopic.TRAFFIC_SPEED, "B", () -> notified.add("a"));
+        assertEquals(1, registry.size());
+
+        registry.notify(ETopic.TRAFFIC_SPEED, Set.of("A"));
+        assertEquals(List.of(), notified);
+
+        registry.unsubscribe("a");
+        registry.notify(ETopic.TRAFFIC_SPEED, Set.of("B"));
+        assertEquals(List.of(), notified);
+        assertEquals(0, registry.size());
+    }
+}
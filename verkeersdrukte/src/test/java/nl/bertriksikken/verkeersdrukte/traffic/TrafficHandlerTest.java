@@ -14,7 +14,7 @@ public final class TrafficHandlerTest {
         VerkeersDrukteAppConfig config = new VerkeersDrukteAppConfig();
         TrafficHandler trafficHandler = new TrafficHandler(config);
         trafficHandler.start();
-        trafficHandler.subscribe("client", TrafficHandlerTest::notifyData);
+        trafficHandler.subscribe("client", ITrafficHandler.ETopic.TRAFFIC_SPEED, null, TrafficHandlerTest::notifyData);
     }
 
     private static void notifyData() {